@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Measures the per-event steps of the hot path against the recorded change events: parsing the JSON envelope, decoding
+ * it into a row with JsonChangeEventDecoder, rendering the values of the row as the text sent to SortCL (which converts the dates,
+ * times and timestamps), encoding the row straight into the bytes written to the stdin of its job, as SclScript.writeRow does, and
+ * routing the row to its SortCL job. Each invocation takes the next event of the recording, so the results are averages over its
+ * inserts, updates and deletes.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import com.google.gson.JsonParser;
+import io.debezium.engine.ChangeEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ChangeEventBenchmark {
+    private static final int OTHER_JOBS = 64; // Jobs of other tables, which share the map the rows are routed through.
+    // Constant, and called with invokeExact, so that they are inlined into the benchmarks.
+    private static final MethodHandle DECODE = Ripcurrent.method("JsonChangeEventDecoder", "decode", ChangeEvent.class);
+    private static final MethodHandle GET_STRING = Ripcurrent.method("ChangeRow", "getString", int.class);
+    private static final MethodHandle ENCODE = Ripcurrent.method("ChangeRow", "encode", byte[].class, Ripcurrent.type("RowBuffer"));
+    private static final MethodHandle RESET_ROW_BUFFER = Ripcurrent.method("RowBuffer", "reset");
+    private static final MethodHandle GET_OPERATION = Ripcurrent.method("ChangeRow", "getOperation");
+    private static final MethodHandle GET_SOURCE_TABLE_IDENTIFIER = Ripcurrent.method("ChangeRow", "getSourceTableIdentifier");
+    private static final MethodHandle GET_COLUMNS = Ripcurrent.method("ChangeRow", "getColumns");
+    private static final MethodHandle GET_SCHEMA_PLAN = Ripcurrent.method("ChangeRow", "getSchemaPlan");
+    private static final MethodHandle GET_COLUMNS_HASH = Ripcurrent.method("SchemaPlan", "getColumnsHash");
+    private static final MethodHandle NEW_SCRIPT_KEY = Ripcurrent.constructor("ScriptKey", String.class, String.class, List.class, int.class);
+
+    @Param({"narrow", "wide"})
+    String recording;
+
+    private List<ChangeEvent<String, String>> events;
+    private Object[] rows; // The events decoded in setup.
+    private int[] columnCounts;
+    private Object decoder;
+    private Map<Object, Object> scripts;
+    private Object rowBuffer;
+    private byte[] tab;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        events = RecordedEvents.read(recording);
+        Object m = RecordedEvents.newMain();
+        decoder = Ripcurrent.constructor("JsonChangeEventDecoder", Ripcurrent.type("Main")).invoke(m);
+        rowBuffer = Ripcurrent.constructor("RowBuffer").invoke();
+        tab = (byte[]) Ripcurrent.getter("RowBuffer", "TAB").invoke();
+        MethodHandle newScript = Ripcurrent.constructor("SclScript", String.class, String.class, String.class, String.class, ArrayList.class, String.class, String.class);
+        MethodHandle getSourceTable = Ripcurrent.method("ChangeRow", "getSourceTable");
+        MethodHandle getSourceSchema = Ripcurrent.method("ChangeRow", "getSourceSchema");
+        scripts = ((AtomicReference<Map<Object, Object>>) Ripcurrent.getter("Main", "scripts").invoke()).get();
+        rows = new Object[events.size()];
+        columnCounts = new int[events.size()];
+        for (int index = 0; index < events.size(); index++) {
+            Object row = (Object) DECODE.invokeExact(decoder, events.get(index));
+            List<String> columns = (List<String>) GET_COLUMNS.invokeExact(row);
+            rows[index] = row;
+            columnCounts[index] = columns.size();
+            // Every row has a job to be routed to, as once the jobs of the table have been started.
+            Object key = route(row);
+            if (!scripts.containsKey(key)) {
+                scripts.put(key, newScript.invoke(getSourceTable.invoke(row), getSourceSchema.invoke(row), null, "BENCH_DSN", new ArrayList<>(columns), (String) GET_OPERATION.invokeExact(row), ""));
+            }
+            if (index == 0) {
+                for (int job = 0; job < OTHER_JOBS; job++) {
+                    Object otherKey = (Object) NEW_SCRIPT_KEY.invokeExact("c", "inventory.other_" + job, columns, columns.hashCode());
+                    scripts.put(otherKey, newScript.invoke("other_" + job, "inventory", null, "BENCH_DSN", new ArrayList<>(columns), "c", ""));
+                }
+            }
+        }
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == events.size() ? 0 : index + 1;
+        return index;
+    }
+
+    // The key of the job of a row, as Main.applyChangeRow looks it up.
+    private Object route(Object row) throws Throwable {
+        return (Object) NEW_SCRIPT_KEY.invokeExact((String) GET_OPERATION.invokeExact(row), (String) GET_SOURCE_TABLE_IDENTIFIER.invokeExact(row), (List<?>) GET_COLUMNS.invokeExact(row),
+                (int) GET_COLUMNS_HASH.invokeExact((Object) GET_SCHEMA_PLAN.invokeExact(row)));
+    }
+
+    @Benchmark
+    public Object parseEnvelope() {
+        return JsonParser.parseString(events.get(nextIndex()).value());
+    }
+
+    @Benchmark
+    public Object decode() throws Throwable {
+        return (Object) DECODE.invokeExact(decoder, events.get(nextIndex()));
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) throws Throwable {
+        int index = nextIndex();
+        for (int column = 0; column < columnCounts[index]; column++) {
+            blackhole.consume((String) GET_STRING.invokeExact(rows[index], column));
+        }
+    }
+
+    @Benchmark
+    public Object encode() throws Throwable {
+        RESET_ROW_BUFFER.invokeExact(rowBuffer);
+        ENCODE.invokeExact(rows[nextIndex()], tab, rowBuffer);
+        return rowBuffer;
+    }
+
+    @Benchmark
+    public Object route() throws Throwable {
+        return scripts.get(route(rows[nextIndex()]));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Compares matching a column against the data classes one pattern at a time, as classify() used to, with the combined
+ * patterns of DataClassIndex. Both find the first data class in library order whose content or name pattern matches.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataClassMatchBenchmark {
+    // Content and name patterns of the shipped iriLibrary.dataclass; further data classes are generated to reach the count.
+    private static final String[][] LIBRARY_CLASSES = {
+            {"\\b[\\w._%+-]+@[\\w.-]+\\.[A-Za-z]{2,4}\\b", "EMAIL"},
+            {"\\b\\d{5}(?:-\\d{4})?\\b", "POSTAL_CODE_US"},
+            {"\\b(\\d{3}[-]?\\d{2}[-]?\\d{4})\\b", "PIN_US"},
+            {"/d{14}", ".*TIMESTAMP"},
+    };
+    private static final String[][] COLUMNS = { // Value and name of the columns of a typical row; most match no data class.
+            {"1042", "ID"},
+            {"John", "FIRST_NAME"},
+            {"Smith", "LAST_NAME"},
+            {"john.smith@example.com", "CONTACT"},
+            {"12345-6789", "ZIP"},
+            {"2022-04-15T05:20", "CREATED_TIMESTAMP"},
+            {"Sales", "DEPARTMENT"},
+            {"57000.00", "SALARY"},
+    };
+    private static final MethodHandle MATCH = Ripcurrent.method("DataClassIndex", "match", String.class, String.class);
+
+    @Param({"4", "16", "64"})
+    int dataClasses;
+
+    private Pattern[] contentPatterns;
+    private Pattern[] namePatterns;
+    private Object dataClassIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        contentPatterns = new Pattern[dataClasses];
+        namePatterns = new Pattern[dataClasses];
+        MethodHandle newRule = Ripcurrent.constructor("Rule", String.class, String.class);
+        MethodHandle newNameMatcher = Ripcurrent.constructor("NameMatcher", String.class);
+        MethodHandle newPatternMatcher = Ripcurrent.constructor("PatternMatcher", String.class);
+        MethodHandle newDataClassMatcher = Ripcurrent.constructor("DataClassMatcher", Ripcurrent.type("NameMatcher"), Ripcurrent.type("DataMatcher"));
+        MethodHandle add = Ripcurrent.method("DataClassIndex", "add", Ripcurrent.type("Rule"), Ripcurrent.type("DataClassMatcher"));
+        dataClassIndex = Ripcurrent.constructor("DataClassIndex").invoke();
+        for (int index = 0; index < dataClasses; index++) {
+            String content;
+            String name;
+            if (index < LIBRARY_CLASSES.length) {
+                content = LIBRARY_CLASSES[index][0];
+                name = LIBRARY_CLASSES[index][1];
+            } else {
+                content = "[A-Z]{2}" + (char) ('A' + index % 26) + "\\d{" + (3 + index % 7) + "}";
+                name = "GENERATED_" + index;
+            }
+            contentPatterns[index] = Pattern.compile(content);
+            namePatterns[index] = Pattern.compile(name);
+            Object rule = newRule.invoke("Expression", "rule_" + index);
+            add.invoke(dataClassIndex, rule, newDataClassMatcher.invoke(newNameMatcher.invoke(name), newPatternMatcher.invoke(content)));
+        }
+        Ripcurrent.method("DataClassIndex", "compile").invoke(dataClassIndex);
+    }
+
+    // The loop classify() ran before DataClassIndex: each data class is tried in turn until one matches.
+    @Benchmark
+    public void patternLoop(Blackhole blackhole) {
+        for (String[] column : COLUMNS) {
+            int matched = -1;
+            for (int index = 0; index < dataClasses; index++) {
+                if (contentPatterns[index].matcher(column[0]).matches() || namePatterns[index].matcher(column[1]).matches()) {
+                    matched = index;
+                    break;
+                }
+            }
+            blackhole.consume(matched);
+        }
+    }
+
+    // Called through a constant method handle with invokeExact, which the JIT compiler inlines like a direct call.
+    @Benchmark
+    public void combinedIndex(Blackhole blackhole) throws Throwable {
+        for (String[] column : COLUMNS) {
+            blackhole.consume((Object) MATCH.invokeExact(dataClassIndex, column[0], column[1]));
+        }
+    }
+}
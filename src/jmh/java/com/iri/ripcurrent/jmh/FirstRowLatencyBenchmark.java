@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Measures the latency of the first row of new tables, which each need a new SortCL job, with tools/sortcl-standin.sh in
+ * place of sortcl. acceptFirstRows is the time the engine thread spends before it can go on to other change events; deliverFirstRows
+ * includes flushing the rows into the pipes of the started jobs, as happens at the end of a batch. Set SORTCL_STANDIN_STARTUP_MS to
+ * imitate the start-up time of sortcl, and -Dripcurrent.sortclStandin to use another stand-in.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import io.debezium.engine.ChangeEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class FirstRowLatencyBenchmark {
+    private static final String KEY = "{\"schema\":{\"type\":\"struct\",\"fields\":[{\"type\":\"int32\",\"optional\":false,\"field\":\"id\"}],\"optional\":false},\"payload\":{\"id\":1}}";
+    private static final String VALUE = "{\"schema\":{\"type\":\"struct\",\"fields\":["
+            + "{\"type\":\"struct\",\"fields\":[{\"type\":\"int32\",\"optional\":false,\"field\":\"id\"},{\"type\":\"string\",\"optional\":true,\"field\":\"name\"},"
+            + "{\"type\":\"int32\",\"optional\":true,\"name\":\"io.debezium.time.Date\",\"version\":1,\"field\":\"born\"}],\"optional\":true,\"field\":\"after\"}],"
+            + "\"optional\":false},\"payload\":{\"before\":null,\"after\":{\"id\":1,\"name\":\"John Smith\",\"born\":7000},"
+            + "\"source\":{\"db\":\"bench\",\"table\":\"TABLE\",\"ts_ms\":0},\"op\":\"c\",\"ts_ms\":0}}";
+
+    private static final MethodHandle HANDLE_CHANGE_EVENT = Ripcurrent.method("Main", "handleChangeEvent", Ripcurrent.type("Main"), Object.class, Ripcurrent.type("ChangeEventDecoder"));
+    private static final MethodHandle FLUSH_SORTCL_SCRIPT = Ripcurrent.method("Main", "flushSortCLScript", Ripcurrent.type("ScriptKey"), Ripcurrent.type("Main"));
+    private static final MethodHandle CLOSE_SORTCL_SCRIPTS = Ripcurrent.method("Main", "closeSortCLScripts");
+
+    @Param({"0", "4"})
+    int spawnThreads; // 0 starts each job on the engine thread, as before jobs were started in the background.
+
+    @Param({"1", "8"})
+    int tables;
+
+    private Object m;
+    private Object decoder;
+    private int generation; // Every invocation uses tables not seen before.
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        Class<?> main = Ripcurrent.type("Main");
+        ((AtomicReference<Object>) Ripcurrent.getter("Main", "scripts").invoke()).set(new ConcurrentHashMap<>());
+        File cache = Files.createTempFile("classification", ".properties").toFile();
+        cache.deleteOnExit();
+        Properties props = new Properties();
+        props.setProperty("connector.class", "io.debezium.connector.mysql.MySqlConnector");
+        props.setProperty("classificationCachePath", cache.getAbsolutePath());
+        props.setProperty("sortclExecutable", System.getProperty("ripcurrent.sortclStandin", Paths.get("tools", "sortcl-standin.sh").toAbsolutePath().toString()));
+        props.setProperty("sortclSpawnThreads", String.valueOf(spawnThreads));
+        m = Ripcurrent.constructor("Main").invoke();
+        Ripcurrent.method("Main", "setProps", Properties.class).invoke(m, props);
+        Ripcurrent.method("Main", "loadLibraries", main, boolean.class).invoke(m, false);
+        Object flushPolicy = Ripcurrent.method("FlushPolicy", "fromProperties", Properties.class).invoke(props);
+        Ripcurrent.method("Main", "setFlushPolicy", Ripcurrent.type("FlushPolicy")).invoke(m, flushPolicy);
+        Object spawner = Ripcurrent.method("ScriptSpawner", "fromProperties", Properties.class).invoke(props);
+        Ripcurrent.method("Main", "setScriptSpawner", Ripcurrent.type("ScriptSpawner")).invoke(m, spawner);
+        decoder = Ripcurrent.constructor("JsonChangeEventDecoder", main).invoke(m);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJobs() throws Throwable {
+        CLOSE_SORTCL_SCRIPTS.invokeExact();
+        generation++;
+    }
+
+    @Benchmark
+    public Object[] acceptFirstRows() throws Throwable {
+        Object[] keys = new Object[tables];
+        for (int table = 0; table < tables; table++) {
+            keys[table] = (Object) HANDLE_CHANGE_EVENT.invokeExact(m, (Object) event("t" + generation + "_" + table), decoder);
+        }
+        return keys;
+    }
+
+    @Benchmark
+    public Object[] deliverFirstRows() throws Throwable {
+        Object[] keys = acceptFirstRows();
+        for (Object key : keys) {
+            FLUSH_SORTCL_SCRIPT.invokeExact(key, m);
+        }
+        return keys;
+    }
+
+    private static ChangeEvent<String, String> event(String table) {
+        String value = VALUE.replace("\"TABLE\"", "\"" + table + "\"");
+        return new ChangeEvent<String, String>() {
+            @Override
+            public String key() {
+                return KEY;
+            }
+
+            @Override
+            public String value() {
+                return value;
+            }
+
+            @Override
+            public String destination() {
+                return "bench." + table;
+            }
+        };
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Measures the steps of starting a SortCL job for the first insert of a recording: classifying its columns against the
+ * shipped iriLibrary.dataclass and iriLibrary.rules with Main.classify, which the classification cache skips for tables it has seen,
+ * and generating the SortCL script of the job with Main.sortCLScript. No sortcl process is started.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import io.debezium.engine.ChangeEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class JobSetupBenchmark {
+    private static final MethodHandle NEW_FIELD = Ripcurrent.constructor("SclField", String.class);
+    private static final MethodHandle CLASSIFY = Ripcurrent.method("Main", "classify", List.class, Ripcurrent.type("DataClassLibrary"), ArrayList.class);
+    private static final MethodHandle SORTCL_SCRIPT = Ripcurrent.method("Main", "sortCLScript", Ripcurrent.type("SclScript"), Ripcurrent.type("Main"), String.class);
+
+    @Param({"narrow", "wide"})
+    String recording;
+
+    private Object m;
+    private Object dataClassLibrary;
+    private Object script;
+    private String keyField;
+    private List<String> columns;
+    private List<String> values; // Of the first insert, as the columns of a new job are classified.
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        m = RecordedEvents.newMain();
+        dataClassLibrary = Ripcurrent.method("Main", "getDataClassLibrary").invoke(m);
+        Object decoder = Ripcurrent.constructor("JsonChangeEventDecoder", Ripcurrent.type("Main")).invoke(m);
+        MethodHandle decode = Ripcurrent.method("JsonChangeEventDecoder", "decode", ChangeEvent.class);
+        MethodHandle getString = Ripcurrent.method("ChangeRow", "getString", int.class);
+        Object row = null;
+        for (ChangeEvent<String, String> event : RecordedEvents.read(recording)) {
+            row = decode.invoke(decoder, event);
+            if (Ripcurrent.method("ChangeRow", "getOperation").invoke(row).equals("c")) {
+                break;
+            }
+        }
+        columns = (List<String>) Ripcurrent.method("ChangeRow", "getColumns").invoke(row);
+        keyField = (String) Ripcurrent.method("ChangeRow", "getKeyField").invoke(row);
+        values = new ArrayList<>(columns.size());
+        for (int index = 0; index < columns.size(); index++) {
+            values.add((String) getString.invoke(row, index));
+        }
+        // The insert job of the table, with its data types and rules set as makeANewScript sets them.
+        script = Ripcurrent.constructor("SclScript", String.class, String.class, String.class, String.class, ArrayList.class, String.class, String.class)
+                .invoke(Ripcurrent.method("ChangeRow", "getSourceTable").invoke(row), Ripcurrent.method("ChangeRow", "getSourceSchema").invoke(row), null, "BENCH_DSN", new ArrayList<>(columns), "c", "");
+        Object fields = Ripcurrent.method("SclScript", "getFields").invoke(script);
+        Ripcurrent.method("SchemaPlan", "applyDataTypes", List.class).invoke(Ripcurrent.method("ChangeRow", "getSchemaPlan").invoke(row), fields);
+        CLASSIFY.invoke(values, dataClassLibrary, fields);
+    }
+
+    @Benchmark
+    public Object classify() throws Throwable {
+        ArrayList<Object> fields = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            fields.add((Object) NEW_FIELD.invokeExact(column));
+        }
+        CLASSIFY.invokeExact(values, dataClassLibrary, fields);
+        return fields;
+    }
+
+    @Benchmark
+    public String sortCLScript() throws Throwable {
+        return (String) SORTCL_SCRIPT.invokeExact(script, m, keyField);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Measures starting the SortCL jobs of many tables, through the real routing and job creation of Ripcurrent, as the
+ * number of tables grows. Each invocation hands over the first change event of every table, column variant and operation, which starts
+ * a job for each with tools/sortcl-standin.sh in place of sortcl, and the jobs are ended afterwards. The time per job should stay flat
+ * as tables are added. Columns are classified once per table and remembered, as after a restart. Larger counts can be run with
+ * -p tables=<count>, as long as the machine can run that many processes.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JobStartScalingBenchmark {
+    private static final MethodHandle CLOSE_SORTCL_SCRIPTS = Ripcurrent.method("Main", "closeSortCLScripts");
+
+    @Param({"10", "100", "500"})
+    int tables;
+
+    @Param({"2"})
+    int variants;
+
+    private SyntheticTables synthetic;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        synthetic = new SyntheticTables(tables, variants);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJobs() throws Throwable {
+        CLOSE_SORTCL_SCRIPTS.invokeExact();
+    }
+
+    @Benchmark
+    public void startJobs() throws Throwable {
+        synthetic.handle(synthetic.getJobEvents());
+    }
+}
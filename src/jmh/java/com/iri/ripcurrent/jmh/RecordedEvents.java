@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Recorded change events, as the Debezium MySQL connector delivers them with schemas enabled, which drive the hot path
+ * benchmarks. Each line of a recording holds the key and value of one change event. narrow.jsonl has the inserts, updates and deletes
+ * of a table of 7 columns and wide.jsonl those of a table of 43 columns; both have dates, times and timestamps. The recordings are
+ * part of the benchmarks, so different versions of Ripcurrent are measured against the same events.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.debezium.engine.ChangeEvent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+final class RecordedEvents {
+    private RecordedEvents() {
+    }
+
+    // Read a recording from the events resources, by name.
+    static List<ChangeEvent<String, String>> read(String recording) throws IOException {
+        InputStream input = RecordedEvents.class.getResourceAsStream("/events/" + recording + ".jsonl");
+        if (input == null) {
+            throw new IOException("No recorded events named '" + recording + "'.");
+        }
+        List<ChangeEvent<String, String>> events = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    JsonObject event = JsonParser.parseString(line).getAsJsonObject();
+                    events.add(event(textOf(event.get("key")), textOf(event.get("value"))));
+                }
+            }
+        }
+        return events;
+    }
+
+    private static String textOf(JsonElement element) {
+        return element == null || element.isJsonNull() ? null : element.toString();
+    }
+
+    static ChangeEvent<String, String> event(String key, String value) {
+        return new ChangeEvent<String, String>() {
+            @Override
+            public String key() {
+                return key;
+            }
+
+            @Override
+            public String value() {
+                return value;
+            }
+
+            @Override
+            public String destination() {
+                return "mysql";
+            }
+        };
+    }
+
+    // A Main set up as for a MySQL source replicated to a DSN, with the shipped iriLibrary.rules and iriLibrary.dataclass loaded. No
+    // SortCL jobs are started. The libraries are found in the project directory, where the benchmarks are run, or under
+    // -Dripcurrent.home.
+    @SuppressWarnings("unchecked")
+    static Object newMain() throws Throwable {
+        Class<?> main = Ripcurrent.type("Main");
+        ((AtomicReference<Object>) Ripcurrent.getter("Main", "scripts").invoke()).set(new ConcurrentHashMap<>());
+        String home = System.getProperty("ripcurrent.home", ".");
+        File cache = Files.createTempFile("classification", ".properties").toFile();
+        cache.deleteOnExit();
+        Properties props = new Properties();
+        props.setProperty("connector.class", "io.debezium.connector.mysql.MySqlConnector");
+        props.setProperty("classificationCachePath", cache.getAbsolutePath());
+        props.setProperty("rulesLibraryPath", Paths.get(home, "iriLibrary.rules").toAbsolutePath().toString());
+        props.setProperty("dataClassLibraryPath", Paths.get(home, "iriLibrary.dataclass").toAbsolutePath().toString());
+        Object m = Ripcurrent.constructor("Main").invoke();
+        Ripcurrent.method("Main", "setProps", Properties.class).invoke(m, props);
+        Ripcurrent.method("Main", "setDSN", String.class).invoke(m, "BENCH_DSN");
+        Ripcurrent.method("Main", "setDataTargetSeparator", String.class).invoke(m, "\t");
+        Ripcurrent.method("Main", "loadLibraries", main, boolean.class).invoke(m, false);
+        Object dataClassLibrary = Ripcurrent.method("Main", "getDataClassLibrary").invoke(m);
+        if (!(boolean) Ripcurrent.method("DataClassLibrary", "isParsed").invoke(dataClassLibrary)) {
+            throw new IllegalStateException("The libraries in '" + home + "' could not be loaded.");
+        }
+        return m;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Access to the classes of Ripcurrent from the benchmarks. Ripcurrent is in the default package, which cannot be
+ * imported, so its constructors and methods are looked up by name, once, when a benchmark class is loaded. The classes of Ripcurrent
+ * appear as Object in the types of the handles, so that the benchmarks can call them with invokeExact, without boxing or adapting
+ * the arguments on each call.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+final class Ripcurrent {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Ripcurrent() {
+    }
+
+    static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle constructor(String className, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return exact(LOOKUP.unreflectConstructor(constructor));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle method(String className, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return exact(LOOKUP.unreflect(method));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle getter(String className, String name) {
+        try {
+            Field field = type(className).getDeclaredField(name);
+            field.setAccessible(true);
+            return exact(LOOKUP.unreflectGetter(field));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle setter(String className, String name) {
+        try {
+            Field field = type(className).getDeclaredField(name);
+            field.setAccessible(true);
+            return exact(LOOKUP.unreflectSetter(field));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The handle with every class of Ripcurrent in its type replaced by Object, which the benchmarks can name.
+    private static MethodHandle exact(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int index = 0; index < type.parameterCount(); index++) {
+            if (isRipcurrent(type.parameterType(index))) {
+                type = type.changeParameterType(index, Object.class);
+            }
+        }
+        if (isRipcurrent(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    // Classes in the default package.
+    private static boolean isRipcurrent(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getName().indexOf('.') < 0;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Compares applying a micro-batch of inserts, updates and deletes one row at a time, as the /UPDATE and /DELETE jobs of
+ * SortCL do, with staging the batch and merging it with StagingMerge. An in-memory H2 database stands in for the ODBC target; the rows
+ * are staged with a JDBC batch insert in place of the /APPEND of a staging job. Both leave the target with the same rows.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StagingMergeBenchmark {
+    private static final String URL = "jdbc:h2:mem:merge;DB_CLOSE_DELAY=-1";
+    private static final int TABLE_ROWS = 100_000;
+    private static final MethodHandle MERGE = Ripcurrent.method("StagingMerge", "merge", Ripcurrent.type("SclScript"), String.class);
+    private static final MethodHandle NEXT_SEQUENCE = Ripcurrent.method("StagingMerge", "nextSequence");
+    private static final MethodHandle SET_LAST_SEQUENCE = Ripcurrent.setter("SclScript", "lastSequence"); // The last row staged, as a staging job records it.
+
+    @Param({"1000", "10000"})
+    int batchRows;
+
+    private Connection connection;
+    private Object stagingMerge;
+    private Object script;
+    private final List<Object[]> changes = new ArrayList<>(); // Key, operation and value of each change, in order.
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        connection = DriverManager.getConnection(URL);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA BENCH");
+            statement.execute("CREATE TABLE BENCH.ACCOUNTS (ID INT PRIMARY KEY, NAME VARCHAR(64), BALANCE DECIMAL(12, 2))");
+            statement.execute("CREATE TABLE BENCH.ACCOUNTS_STAGING (ID INT, NAME VARCHAR(64), BALANCE DECIMAL(12, 2), RIPCURRENT_OP CHAR(1), RIPCURRENT_SEQ BIGINT)");
+        }
+        stagingMerge = Ripcurrent.constructor("StagingMerge", Set.class, String.class, String.class, String.class, String.class, long.class, long.class)
+                .invoke(Collections.emptySet(), URL, null, null, "_STAGING", 0L, 0L);
+        script = Ripcurrent.constructor("SclScript", String.class, String.class, String.class, String.class, ArrayList.class, String.class, String.class)
+                .invoke("ACCOUNTS", "BENCH", null, "BENCH_DSN", new ArrayList<>(Arrays.asList("ID", "NAME", "BALANCE")), "m", "");
+        Ripcurrent.method("StagingMerge", "addStagingFields", List.class).invoke(Ripcurrent.method("SclScript", "getFields").invoke(script));
+        // Mostly updates of existing keys, with some deletes and inserts of new keys, and repeated changes to hot keys.
+        Random random = new Random(42);
+        for (int index = 0; index < batchRows; index++) {
+            int choice = random.nextInt(10);
+            int key = choice < 2 ? random.nextInt(100) : random.nextInt(TABLE_ROWS);
+            if (choice == 9) {
+                changes.add(new Object[]{TABLE_ROWS + index, "c", index});
+            } else {
+                changes.add(new Object[]{key, choice == 8 ? "d" : "u", index});
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fillTable() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE TABLE BENCH.ACCOUNTS");
+            statement.execute("TRUNCATE TABLE BENCH.ACCOUNTS_STAGING");
+            statement.execute("INSERT INTO BENCH.ACCOUNTS SELECT X, 'Account ' || X, 0 FROM SYSTEM_RANGE(0, " + (TABLE_ROWS - 1) + ")");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void rowAtATime() throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO BENCH.ACCOUNTS (ID, NAME, BALANCE) VALUES (?, ?, ?)");
+             PreparedStatement update = connection.prepareStatement("UPDATE BENCH.ACCOUNTS SET NAME = ?, BALANCE = ? WHERE ID = ?");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM BENCH.ACCOUNTS WHERE ID = ?")) {
+            for (Object[] change : changes) {
+                int key = (Integer) change[0];
+                if (change[1].equals("c")) {
+                    insert.setInt(1, key);
+                    insert.setString(2, "Account " + key);
+                    insert.setInt(3, (Integer) change[2]);
+                    insert.executeUpdate();
+                } else if (change[1].equals("u")) {
+                    update.setString(1, "Account " + key);
+                    update.setInt(2, (Integer) change[2]);
+                    update.setInt(3, key);
+                    update.executeUpdate();
+                } else {
+                    delete.setInt(1, key);
+                    delete.executeUpdate();
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void stageAndMerge() throws Throwable {
+        long lastSequence = 0;
+        try (PreparedStatement stage = connection.prepareStatement("INSERT INTO BENCH.ACCOUNTS_STAGING VALUES (?, ?, ?, ?, ?)")) {
+            for (Object[] change : changes) {
+                int key = (Integer) change[0];
+                stage.setInt(1, key);
+                stage.setString(2, "Account " + key);
+                stage.setInt(3, (Integer) change[2]);
+                stage.setString(4, (String) change[1]);
+                lastSequence = (long) NEXT_SEQUENCE.invokeExact();
+                stage.setLong(5, lastSequence);
+                stage.addBatch();
+            }
+            stage.executeBatch();
+        }
+        SET_LAST_SEQUENCE.invokeExact(script, lastSequence);
+        MERGE.invokeExact(stagingMerge, script, "ID");
+    }
+}
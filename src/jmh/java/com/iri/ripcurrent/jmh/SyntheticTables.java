@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Generates change events for a number of tables, each seen with a number of column variants (the first variant has 5
+ * columns, and each further variant one more) and with inserts, updates and deletes, so every table, variant and operation has a
+ * SortCL job of its own. The events are handed to Ripcurrent as the engine hands them over, a batch at a time, with
+ * tools/sortcl-standin.sh in place of sortcl.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.DebeziumEngine;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+final class SyntheticTables {
+    static final String[] OPERATIONS = {"c", "u", "d"};
+    static final int BATCH_SIZE = 256;
+    private static final MethodHandle HANDLE_BATCH = Ripcurrent.method("BatchChangeConsumer", "handleBatch", List.class, DebeziumEngine.RecordCommitter.class);
+    private static final DebeziumEngine.RecordCommitter<Object> COMMITTER = new DebeziumEngine.RecordCommitter<Object>() {
+        @Override
+        public void markProcessed(Object record) {
+        }
+
+        @Override
+        public void markBatchFinished() {
+        }
+
+        @Override
+        public void markProcessed(Object record, DebeziumEngine.Offsets sourceOffsets) {
+        }
+
+        @Override
+        public DebeziumEngine.Offsets buildOffsets() {
+            return (key, value) -> {
+            };
+        }
+    };
+
+    private final List<ChangeEvent<String, String>> jobEvents = new ArrayList<>(); // One event for the job of each table, variant and operation.
+    private final Object m;
+    private final Object consumer;
+
+    SyntheticTables(int tables, int variants) throws Throwable {
+        for (int table = 0; table < tables; table++) {
+            for (int variant = 0; variant < variants; variant++) {
+                for (String operation : OPERATIONS) {
+                    jobEvents.add(RecordedEvents.event(key(table), value(table, variant, operation, table)));
+                }
+            }
+        }
+        m = RecordedEvents.newMain();
+        Properties props = (Properties) Ripcurrent.method("Main", "getProps").invoke(m);
+        props.setProperty("sortclExecutable", System.getProperty("ripcurrent.sortclStandin", Paths.get("tools", "sortcl-standin.sh").toAbsolutePath().toString()));
+        Ripcurrent.method("Main", "setFlushPolicy", Ripcurrent.type("FlushPolicy")).invoke(m, Ripcurrent.method("FlushPolicy", "fromProperties", Properties.class).invoke(props));
+        Ripcurrent.method("Main", "setScriptSpawner", Ripcurrent.type("ScriptSpawner")).invoke(m, Ripcurrent.method("ScriptSpawner", "fromProperties", Properties.class).invoke(props));
+        Object decoder = Ripcurrent.constructor("JsonChangeEventDecoder", Ripcurrent.type("Main")).invoke(m);
+        consumer = Ripcurrent.constructor("BatchChangeConsumer", Ripcurrent.type("Main"), Ripcurrent.type("ChangeEventDecoder")).invoke(m, decoder);
+    }
+
+    private static String key(int id) {
+        return "{\"schema\":{\"type\":\"struct\",\"fields\":[{\"type\":\"int32\",\"optional\":false,\"field\":\"id\"}],\"optional\":false},\"payload\":{\"id\":" + id + "}}";
+    }
+
+    private static String value(int table, int variant, String operation, int id) {
+        StringBuilder fields = new StringBuilder("{\"type\":\"int32\",\"optional\":false,\"field\":\"id\"},{\"type\":\"string\",\"optional\":true,\"field\":\"name\"},"
+                + "{\"type\":\"string\",\"optional\":true,\"field\":\"amount\"},{\"type\":\"int32\",\"optional\":true,\"name\":\"io.debezium.time.Date\",\"version\":1,\"field\":\"born\"},"
+                + "{\"type\":\"int64\",\"optional\":true,\"name\":\"io.debezium.time.Timestamp\",\"version\":1,\"field\":\"updated_at\"}");
+        StringBuilder image = new StringBuilder("{\"id\":" + id + ",\"name\":\"Name " + id + "\",\"amount\":\"" + id + ".25\",\"born\":" + (7000 + id % 5000) + ",\"updated_at\":" + (1650000000000L + id) + "");
+        for (int column = 1; column <= variant; column++) {
+            fields.append(",{\"type\":\"string\",\"optional\":true,\"field\":\"note_").append(column).append("\"}");
+            image.append(",\"note_").append(column).append("\":\"Note ").append(column).append('"');
+        }
+        image.append('}');
+        String row = "{\"type\":\"struct\",\"fields\":[" + fields + "],\"optional\":true,\"field\":\"";
+        return "{\"schema\":{\"type\":\"struct\",\"fields\":[" + row + "before\"}," + row + "after\"},"
+                + "{\"type\":\"struct\",\"fields\":[{\"type\":\"string\",\"optional\":false,\"field\":\"db\"},{\"type\":\"string\",\"optional\":true,\"field\":\"table\"},"
+                + "{\"type\":\"int64\",\"optional\":false,\"field\":\"ts_ms\"}],\"optional\":false,\"field\":\"source\"},{\"type\":\"string\",\"optional\":false,\"field\":\"op\"},"
+                + "{\"type\":\"int64\",\"optional\":true,\"field\":\"ts_ms\"}],\"optional\":false},\"payload\":{"
+                + "\"before\":" + (operation.equals("c") ? "null" : image) + ",\"after\":" + (operation.equals("d") ? "null" : image) + ","
+                + "\"source\":{\"db\":\"synthetic\",\"table\":\"table_" + table + "\",\"ts_ms\":1650000000000},\"op\":\"" + operation + "\",\"ts_ms\":1650000000000}}";
+    }
+
+    List<ChangeEvent<String, String>> getJobEvents() {
+        return jobEvents;
+    }
+
+    int getJobs() {
+        return jobEvents.size();
+    }
+
+    Object getMain() {
+        return m;
+    }
+
+    // Hand the events over in batches, as the engine does. Each batch is written and flushed to the jobs of its rows, which are started
+    // as needed, before this returns.
+    void handle(List<ChangeEvent<String, String>> events) throws Throwable {
+        for (int from = 0; from < events.size(); from += BATCH_SIZE) {
+            HANDLE_BATCH.invokeExact(consumer, events.subList(from, Math.min(events.size(), from + BATCH_SIZE)), COMMITTER);
+        }
+    }
+
+    static long usedHeap() {
+        for (int collection = 0; collection < 3; collection++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Measures the throughput of change events, through the real decoding, routing and writing of Ripcurrent, while the
+ * SortCL jobs of every table, column variant and operation are running, as the number of tables grows. The events are drawn with a
+ * fixed seed across all the jobs and handed over in batches, with tools/sortcl-standin.sh in place of sortcl. The heap retained by the
+ * running jobs is reported alongside, in total and per job. Both should stay flat per table as tables are added.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import io.debezium.engine.ChangeEvent;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableScalingBenchmark {
+    private static final int BATCHES = 256;
+
+    @Param({"10", "100", "500"})
+    int tables;
+
+    @Param({"2"})
+    int variants;
+
+    private SyntheticTables synthetic;
+    private final List<List<ChangeEvent<String, String>>> batches = new ArrayList<>(BATCHES);
+    private long heapBytes; // Retained by the running jobs.
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class JobMemory {
+        public long heapBytes;
+        public long heapBytesPerJob;
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        synthetic = new SyntheticTables(tables, variants);
+        List<ChangeEvent<String, String>> jobEvents = synthetic.getJobEvents();
+        Random random = new Random(42);
+        for (int batch = 0; batch < BATCHES; batch++) {
+            List<ChangeEvent<String, String>> events = new ArrayList<>(SyntheticTables.BATCH_SIZE);
+            for (int index = 0; index < SyntheticTables.BATCH_SIZE; index++) {
+                events.add(jobEvents.get(random.nextInt(jobEvents.size())));
+            }
+            batches.add(events);
+        }
+        long before = SyntheticTables.usedHeap();
+        synthetic.handle(jobEvents);
+        heapBytes = SyntheticTables.usedHeap() - before;
+        int liveJobs = ((AtomicReference<Map<?, ?>>) Ripcurrent.getter("Main", "scripts").invoke()).get().size();
+        if (liveJobs != synthetic.getJobs()) {
+            throw new IllegalStateException(liveJobs + " jobs are running instead of " + synthetic.getJobs() + ".");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Ripcurrent.method("Main", "closeSortCLScripts").invoke();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SyntheticTables.BATCH_SIZE)
+    public void routeRows(JobMemory memory) throws Throwable {
+        synthetic.handle(batches.get(next));
+        next = next + 1 == BATCHES ? 0 : next + 1;
+        memory.heapBytes = heapBytes;
+        memory.heapBytesPerJob = heapBytes / synthetic.getJobs();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Measures the conversions of DateTimeConversionUtil, which turn the dates (days since 1970), times (microseconds of the
+ * day) and timestamps (milliseconds since 1970) of Debezium into the text sent to SortCL, both as Strings and written into a byte
+ * buffer as rows are encoded, along with the formatting of nanosecond times, microsecond and nanosecond timestamps and zoned
+ * timestamps into the buffer. The values are drawn with a fixed seed, so every run converts the same ones.
+ *
+ * Contributors:
+ *     devonk
+ */
+package com.iri.ripcurrent.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TemporalConversionBenchmark {
+    private static final int VALUES = 1024; // A power of two.
+    // Constant, and called with invokeExact, so that they are inlined into the benchmarks.
+    private static final MethodHandle INTEGER_TO_DATE = Ripcurrent.method("DateTimeConversionUtil", "integerToDate", Integer.class);
+    private static final MethodHandle NUMBER_TO_TIME = Ripcurrent.method("DateTimeConversionUtil", "numberToTime", long.class);
+    private static final MethodHandle NUMBER_TO_DATE_TIME = Ripcurrent.method("DateTimeConversionUtil", "numberToDateTime", long.class);
+    private static final MethodHandle FORMAT_DATE = Ripcurrent.method("DateTimeConversionUtil", "formatDate", long.class, byte[].class, int.class);
+    private static final MethodHandle FORMAT_TIME = Ripcurrent.method("DateTimeConversionUtil", "formatTime", long.class, TimeUnit.class, byte[].class, int.class);
+    private static final MethodHandle FORMAT_TIMESTAMP = Ripcurrent.method("DateTimeConversionUtil", "formatTimestamp", long.class, TimeUnit.class, byte[].class, int.class);
+    private static final MethodHandle FORMAT_ZONED_TIMESTAMP = Ripcurrent.method("DateTimeConversionUtil", "formatZonedTimestamp", CharSequence.class, byte[].class, int.class);
+
+    private final int[] dates = new int[VALUES];
+    private final long[] times = new long[VALUES];
+    private final long[] timestamps = new long[VALUES];
+    private final long[] nanoTimes = new long[VALUES];
+    private final long[] microTimestamps = new long[VALUES];
+    private final long[] nanoTimestamps = new long[VALUES];
+    private final String[] zonedTimestamps = new String[VALUES];
+    private final byte[] out = new byte[64];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int index = 0; index < VALUES; index++) {
+            dates[index] = random.nextInt(30000) - 10000;
+            times[index] = (long) (random.nextDouble() * TimeUnit.DAYS.toMicros(1));
+            timestamps[index] = 1_500_000_000_000L + (long) (random.nextDouble() * 500_000_000_000L);
+            nanoTimes[index] = (long) (random.nextDouble() * TimeUnit.DAYS.toNanos(1));
+            microTimestamps[index] = timestamps[index] * 1000 + random.nextInt(1000);
+            nanoTimestamps[index] = microTimestamps[index] * 1000 + random.nextInt(1000);
+            // As Debezium writes the TIMESTAMP columns of MySQL, in UTC.
+            zonedTimestamps[index] = OffsetDateTime.ofInstant(Instant.ofEpochMilli(timestamps[index]), ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (VALUES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public String integerToDate() throws Throwable {
+        return (String) INTEGER_TO_DATE.invokeExact((Integer) dates[nextIndex()]);
+    }
+
+    @Benchmark
+    public String numberToTime() throws Throwable {
+        return (String) NUMBER_TO_TIME.invokeExact(times[nextIndex()]);
+    }
+
+    @Benchmark
+    public String numberToDateTime() throws Throwable {
+        return (String) NUMBER_TO_DATE_TIME.invokeExact(timestamps[nextIndex()]);
+    }
+
+    @Benchmark
+    public int formatDate() throws Throwable {
+        return (int) FORMAT_DATE.invokeExact((long) dates[nextIndex()], out, 0);
+    }
+
+    @Benchmark
+    public int formatMicroTime() throws Throwable {
+        return (int) FORMAT_TIME.invokeExact(times[nextIndex()], TimeUnit.MICROSECONDS, out, 0);
+    }
+
+    @Benchmark
+    public int formatNanoTime() throws Throwable {
+        return (int) FORMAT_TIME.invokeExact(nanoTimes[nextIndex()], TimeUnit.NANOSECONDS, out, 0);
+    }
+
+    @Benchmark
+    public int formatTimestamp() throws Throwable {
+        return (int) FORMAT_TIMESTAMP.invokeExact(timestamps[nextIndex()], TimeUnit.MILLISECONDS, out, 0);
+    }
+
+    @Benchmark
+    public int formatMicroTimestamp() throws Throwable {
+        return (int) FORMAT_TIMESTAMP.invokeExact(microTimestamps[nextIndex()], TimeUnit.MICROSECONDS, out, 0);
+    }
+
+    @Benchmark
+    public int formatNanoTimestamp() throws Throwable {
+        return (int) FORMAT_TIMESTAMP.invokeExact(nanoTimestamps[nextIndex()], TimeUnit.NANOSECONDS, out, 0);
+    }
+
+    @Benchmark
+    public int formatZonedTimestamp() throws Throwable {
+        return (int) FORMAT_ZONED_TIMESTAMP.invokeExact((CharSequence) zonedTimestamps[nextIndex()], out, 0);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Applies decoded change rows to their SortCL jobs on a pool of worker threads, so a slow target only holds up its own
+ * tables. Each source table is always handled by the same worker, which keeps the rows of a table in order while different tables are
+ * written in parallel. The queue of each worker is bounded; when it is full, the engine thread waits, which holds back the connector.
+ * The end of a batch is queued on every worker as well, and the batch is reported finished by the last worker to reach it, so the
+ * engine thread goes on to the next batch without waiting for the slowest target.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ApplyPipeline {
+    private static final Logger LOG = LoggerFactory.getLogger(ApplyPipeline.class);
+    final static int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final Main m;
+    private final Lane[] lanes;
+
+    ApplyPipeline(Main m, int threads, int queueSize) {
+        this.m = m;
+        this.lanes = new Lane[threads];
+        for (int index = 0; index < threads; index++) {
+            lanes[index] = new Lane(queueSize);
+            Thread thread = new Thread(lanes[index], "sortcl-apply-" + index);
+            thread.setDaemon(true); // Rows still queued at shutdown have not been marked as processed, and are replayed on restart.
+            thread.start();
+        }
+    }
+
+    // Build the pipeline from the configuration properties. Returns null when rows are to be applied on the engine thread.
+    static ApplyPipeline fromProperties(Main m, Properties props) {
+        int threads = parseCount(props, Main.APPLY_THREADS_PROPERTY_NAME, 0);
+        if (threads <= 0) {
+            return null;
+        }
+        LOG.info("Applying change events to SortCL jobs on {} worker threads.", threads);
+        return new ApplyPipeline(m, threads, Math.max(1, parseCount(props, Main.APPLY_QUEUE_SIZE_PROPERTY_NAME, DEFAULT_QUEUE_SIZE)));
+    }
+
+    private static int parseCount(Properties props, String propertyName, int defaultValue) {
+        String value = props.getProperty(propertyName);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for property {}. The default of {} will be used.", value, propertyName, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    // Queue a row on the worker for its table, waiting while that worker's queue is full.
+    public void submit(ChangeRow row) throws InterruptedException {
+        Lane lane = lanes[(row.getSourceTableIdentifier().hashCode() & Integer.MAX_VALUE) % lanes.length];
+        lane.queue.put(() -> {
+            ScriptKey scriptsKey = Main.applyChangeRow(m, row);
+            if (scriptsKey != null) {
+                lane.touchedScripts.add(scriptsKey);
+            }
+        });
+    }
+
+    // Once every row queued so far has been written to its SortCL job and, if requested, each job that was written to has been flushed,
+    // run the callback on the worker that got there last. Only waits while the queue of a worker is full.
+    public void finishBatch(boolean flush, Runnable finished) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(lanes.length);
+        for (Lane lane : lanes) {
+            lane.queue.put(() -> {
+                if (flush) {
+                    for (ScriptKey scriptsKey : lane.touchedScripts) {
+                        Main.flushSortCLScript(scriptsKey, m);
+                    }
+                }
+                lane.touchedScripts.clear();
+                if (remaining.decrementAndGet() == 0) {
+                    finished.run();
+                }
+            });
+        }
+    }
+
+    // Wait until every row queued so far has been written to its SortCL job and, if requested, flush each job that was written to.
+    public void finishBatch(boolean flush) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        finishBatch(flush, finished::countDown);
+        finished.await();
+    }
+
+    // A worker thread and its queue of pending work. The touched scripts are only accessed from the worker thread.
+    private class Lane implements Runnable {
+        private final BlockingQueue<Runnable> queue;
+        private final Set<ScriptKey> touchedScripts = new LinkedHashSet<>();
+
+        Lane(int queueSize) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Runnable work = queue.take();
+                    try {
+                        work.run();
+                    } catch (RuntimeException unexpectedException) {
+                        LOG.error("Unexpected exception encountered: '{}'. Terminating...", unexpectedException.getMessage());
+                        Main.terminateSortCLScript(null, m);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Consume change events from the Debezium embedded engine a whole poll batch at a time. Rows are written to the
+ * SortCL jobs as the events are handled, each job touched by the batch is flushed once, and only then is the batch marked as processed.
+ * When rows are applied by worker threads, the batch is marked as processed by the last worker to finish it, so the engine thread does
+ * not wait for slow targets. When updates and deletes are coalesced, rows are instead held across batches for the coalescing window, and
+ * their change events are only marked as processed once the coalesced rows have been written and flushed. When flushes are left to the
+ * background flusher, each batch is held until every job holding its rows has been flushed, and is marked as processed by the flusher
+ * or with a later batch. Batches are always marked as processed in the order they arrived.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import io.debezium.engine.DebeziumEngine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class BatchChangeConsumer<R> implements DebeziumEngine.ChangeConsumer<R> {
+    private static final long WRITING = Long.MAX_VALUE; // Sequence of a batch whose rows are still being written.
+
+    private final Main m;
+    private final ChangeEventDecoder<R> decoder;
+    private final RowCoalescer coalescer; // Null unless updates and deletes are coalesced.
+    private final List<R> heldRecords = new ArrayList<>(); // Change events held by the coalescer, in order.
+    private final List<ChangeRow> heldRows = new ArrayList<>(); // Rows held by the coalescer, in the order they were changed.
+    private long oldestHeldNanos; // When the first held row was received.
+    private final Queue<PendingBatch<R>> pendingBatches = new ArrayDeque<>(); // Batches not yet marked as processed, in order.
+    private volatile DebeziumEngine.RecordCommitter<R> committer; // Of the latest batch, to mark batches as processed from other threads.
+
+    BatchChangeConsumer(Main m, ChangeEventDecoder<R> decoder) {
+        this.m = m;
+        this.decoder = decoder;
+        this.coalescer = m.getRowCoalescer();
+        if (coalescer != null && coalescer.getWindowMillis() > 0) {
+            startReleaser(coalescer.getWindowMillis());
+        }
+        if (m.getFlushPolicy() != null && m.getFlushPolicy().defersFlush()) {
+            m.getFlushPolicy().addFlushListener(() -> markProcessed(true));
+        }
+    }
+
+    @Override
+    public void handleBatch(List<R> records, DebeziumEngine.RecordCommitter<R> committer) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        this.committer = committer;
+        applyBatch(records);
+        markProcessed(false);
+        m.getMetrics().batches.recordSince(startNanos);
+    }
+
+    private void applyBatch(List<R> records) throws InterruptedException {
+        if (coalescer != null) {
+            holdCoalescedBatch(records);
+            return;
+        }
+        boolean flush = !m.getFlushPolicy().defersFlush();
+        PendingBatch<R> batch = addPendingBatch(records);
+        ApplyPipeline pipeline = m.getApplyPipeline();
+        if (pipeline != null) { // Rows are applied by the workers of each table, and the last of them to finish the batch marks it.
+            for (R record : records) {
+                ChangeRow row = Main.decodeChangeEvent(m, record, decoder);
+                if (row != null) {
+                    pipeline.submit(row);
+                }
+            }
+            pipeline.finishBatch(flush, () -> written(batch, flush));
+            return;
+        }
+        Set<ScriptKey> touchedScripts = new LinkedHashSet<>(); // Keys of the SortCL jobs written to in this batch, in the order they were first written.
+        for (R record : records) {
+            ScriptKey scriptsKey = Main.handleChangeEvent(m, record, decoder);
+            if (scriptsKey != null) {
+                touchedScripts.add(scriptsKey);
+            }
+        }
+        if (flush) {
+            for (ScriptKey scriptsKey : touchedScripts) {
+                Main.flushSortCLScript(scriptsKey, m);
+            }
+        }
+        written(batch, flush);
+    }
+
+    private PendingBatch<R> addPendingBatch(List<R> records) {
+        PendingBatch<R> batch = new PendingBatch<>(new ArrayList<>(records));
+        synchronized (pendingBatches) {
+            pendingBatches.add(batch);
+        }
+        return batch;
+    }
+
+    // Every row of the batch has been written, and flushed if requested. Called on the thread that wrote the last of them.
+    private void written(PendingBatch<R> batch, boolean flushed) {
+        batch.sequence = flushed ? 0 : SclScript.currentPendingSequence();
+        markProcessed(false);
+    }
+
+    // Offsets only move forward once every row of a batch has been written and flushed to its SortCL job. When flushes are deferred,
+    // a batch waits for the background flusher, or for the jobs to flush as their limits are reached, and the batches flushed since
+    // are marked as processed, in order, after the next round of the flusher or with a later batch. Until then their rows may be
+    // replayed after a restart, but never lost. The flusher finishes a batch after every round, even when it marked nothing, so that
+    // offsets marked earlier are committed once the offset commit policy allows, when no further change events arrive.
+    private void markProcessed(boolean finishBatch) {
+        DebeziumEngine.RecordCommitter<R> committer = this.committer;
+        if (committer == null) {
+            return;
+        }
+        synchronized (pendingBatches) {
+            try {
+                long oldestPending = 0; // Only looked up for a batch whose rows were not flushed when written.
+                boolean marked = false;
+                while (!pendingBatches.isEmpty() && pendingBatches.peek().sequence != WRITING) {
+                    long sequence = pendingBatches.peek().sequence;
+                    if (sequence > 0) {
+                        oldestPending = oldestPending == 0 ? oldestPendingSequence() : oldestPending;
+                        if (sequence >= oldestPending) {
+                            break;
+                        }
+                    }
+                    for (R record : pendingBatches.poll().records) {
+                        committer.markProcessed(record);
+                    }
+                    marked = true;
+                }
+                if (marked || finishBatch) {
+                    committer.markBatchFinished();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // The sequence of the oldest unflushed row of any job, or Long.MAX_VALUE if every row has been flushed.
+    private static long oldestPendingSequence() {
+        long oldest = Long.MAX_VALUE;
+        for (SclScript script : Main.scripts.get().values()) {
+            long sequence = script.getOldestPendingSequence();
+            if (sequence > 0 && sequence < oldest) {
+                oldest = sequence;
+            }
+        }
+        return oldest;
+    }
+
+    // Hold the rows of the batch with those of earlier batches until the coalescing window closes. Change events are marked as
+    // processed once their coalesced rows have been written and flushed, here or by the releaser.
+    private synchronized void holdCoalescedBatch(List<R> records) throws InterruptedException {
+        for (R record : records) {
+            heldRecords.add(record);
+            ChangeRow row = Main.decodeChangeEvent(m, record, decoder);
+            if (row != null) {
+                if (heldRows.isEmpty()) {
+                    oldestHeldNanos = System.nanoTime();
+                }
+                heldRows.add(row);
+            }
+        }
+        if (heldRows.isEmpty() || coalescer.isReleaseDue(heldRows.size(), oldestHeldNanos, System.nanoTime())) {
+            release();
+        }
+    }
+
+    // Write the coalesced rows to their SortCL jobs and flush them. The held change events are marked as processed once that is done.
+    private synchronized void release() throws InterruptedException {
+        List<ChangeRow> rows = coalescer.coalesce(heldRows);
+        heldRows.clear();
+        PendingBatch<R> batch = addPendingBatch(heldRecords);
+        heldRecords.clear();
+        ApplyPipeline pipeline = m.getApplyPipeline();
+        if (pipeline != null) {
+            for (ChangeRow row : rows) {
+                pipeline.submit(row);
+            }
+            pipeline.finishBatch(true, () -> written(batch, true));
+            return;
+        }
+        Set<ScriptKey> touchedScripts = new LinkedHashSet<>();
+        for (ChangeRow row : rows) {
+            ScriptKey scriptsKey = Main.applyChangeRow(m, row);
+            if (scriptsKey != null) {
+                touchedScripts.add(scriptsKey);
+            }
+        }
+        for (ScriptKey scriptsKey : touchedScripts) {
+            Main.flushSortCLScript(scriptsKey, m);
+        }
+        written(batch, true);
+    }
+
+    // Write and flush any rows still held by the coalescer, and wait for the workers to write every row handed to them, as when no
+    // further change events will arrive.
+    synchronized void drain() throws InterruptedException {
+        if (coalescer != null && !heldRows.isEmpty()) {
+            release();
+        }
+        ApplyPipeline pipeline = m.getApplyPipeline();
+        if (pipeline != null) {
+            pipeline.finishBatch(false);
+        }
+    }
+
+    // Release held rows once their window has passed, even if no further change events arrive.
+    private void startReleaser(long windowMillis) {
+        ScheduledExecutorService releaser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, windowMillis / 2);
+        releaser.scheduleWithFixedDelay(() -> {
+            synchronized (this) {
+                if (coalescer.isReleaseDue(heldRows.size(), oldestHeldNanos, System.nanoTime())) {
+                    try {
+                        release();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // The change events of a batch, and the pending sequence once its rows had been written: 0 if they were flushed as well.
+    private static final class PendingBatch<R> {
+        final List<R> records;
+        volatile long sequence = WRITING;
+
+        PendingBatch(List<R> records) {
+            this.records = records;
+        }
+    }
+}
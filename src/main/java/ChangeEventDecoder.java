@@ -0,0 +1,12 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Interface for decoding the change events delivered by the Debezium embedded engine in a particular format.
+ *
+ * Contributors:
+ *     devonk
+ */
+public interface ChangeEventDecoder<R> {
+    // Returns null when the change event carries nothing to replicate, such as a tombstone.
+    ChangeRow decode(R record);
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Replays change events captured to a file, one per line, through the same path as change events from the Debezium
+ * embedded engine, so Ripcurrent can be load tested without a source database. Each line is either a JSON change event with schemas
+ * enabled, or an object holding the "key" and "value" of one. The events are handed over in batches of the engine's default size,
+ * every job is ended once the file has been replayed, and the rows per second, bytes per second, latencies and SortCL processes of
+ * the run are reported. Together with a stand-in for sortcl, such as tools/sortcl-standin.sh, this gives an end-to-end performance
+ * test that runs anywhere.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.DebeziumEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+public class ChangeEventReplay {
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeEventReplay.class);
+    static final int DEFAULT_BATCH_SIZE = 2048; // The max.batch.size of the engine.
+    private static final DiscardingCommitter COMMITTER = new DiscardingCommitter();
+
+    private final Path path;
+    private final int batchSize;
+    private final String reportPath; // Null unless the report is also written to a file.
+    private final LatencyHistogram latency = new LatencyHistogram("replay", "Time from reading a change event until it was handled along with its batch.");
+    private long events;
+    private int maxLiveJobs;
+
+    ChangeEventReplay(Path path, int batchSize, String reportPath) {
+        this.path = path;
+        this.batchSize = batchSize;
+        this.reportPath = reportPath;
+    }
+
+    // Null unless a file to replay is set.
+    static ChangeEventReplay fromProperties(Properties props) {
+        String file = props.getProperty(Main.REPLAY_FILE_PROPERTY_NAME);
+        if (file == null || file.trim().isEmpty()) {
+            return null;
+        }
+        int batchSize = DEFAULT_BATCH_SIZE;
+        String batchSizeValue = props.getProperty(Main.REPLAY_BATCH_SIZE_PROPERTY_NAME);
+        if (batchSizeValue != null && !batchSizeValue.trim().isEmpty()) {
+            try {
+                batchSize = Math.max(1, Integer.parseInt(batchSizeValue.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value '{}' for property {}. The default of {} will be used.", batchSizeValue, Main.REPLAY_BATCH_SIZE_PROPERTY_NAME, DEFAULT_BATCH_SIZE);
+            }
+        }
+        if (Main.ENGINE_FORMAT_CONNECT.equalsIgnoreCase(props.getProperty(Main.ENGINE_FORMAT_PROPERTY_NAME))) {
+            LOG.warn("Captured change events are replayed as JSON. {} will be ignored.", Main.ENGINE_FORMAT_PROPERTY_NAME);
+        }
+        try {
+            return new ChangeEventReplay(Paths.get(file.trim()), batchSize, props.getProperty(Main.REPLAY_REPORT_PROPERTY_NAME));
+        } catch (InvalidPathException e) {
+            LOG.error("Invalid path for {} '{}'.", Main.REPLAY_FILE_PROPERTY_NAME, file);
+            return new ChangeEventReplay(null, batchSize, null);
+        }
+    }
+
+    // Replay the file, end every job and report the run. Returns false if the file could not be replayed in full.
+    boolean run(Main m) {
+        if (path == null) {
+            return false;
+        }
+        LOG.info("Replaying change events from '{}' in batches of {}.", path, batchSize);
+        JsonChangeEventDecoder decoder = new JsonChangeEventDecoder(m);
+        BatchChangeConsumer<ChangeEvent<String, String>> consumer = null; // Null when change events are handled one at a time.
+        if (!Main.CHANGE_EVENT_CONSUMER_RECORD.equalsIgnoreCase(m.getProps().getProperty(Main.CHANGE_EVENT_CONSUMER_PROPERTY_NAME))) {
+            consumer = new BatchChangeConsumer<>(m, decoder);
+        }
+        List<ChangeEvent<String, String>> batch = new ArrayList<>(batchSize);
+        long[] readNanos = new long[batchSize];
+        long lineNumber = 0;
+        long startNanos = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                ChangeEvent<String, String> event = parse(line);
+                if (event == null) {
+                    LOG.error("Line {} of '{}' is not a change event. Aborting...", lineNumber, path);
+                    return false;
+                }
+                readNanos[batch.size()] = System.nanoTime();
+                batch.add(event);
+                if (batch.size() == batchSize) {
+                    handle(m, decoder, consumer, batch, readNanos);
+                }
+            }
+            if (!batch.isEmpty()) {
+                handle(m, decoder, consumer, batch, readNanos);
+            }
+            if (consumer != null) {
+                consumer.drain();
+            }
+        } catch (IOException e) {
+            LOG.error("Could not read change events from '{}': {}. Aborting...", path, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        // The run ends once every row has been through its sortcl process.
+        for (SclScript script : new ArrayList<>(Main.scripts.get().values())) {
+            Main.retireSortCLScript(script, m);
+        }
+        report(m, System.nanoTime() - startNanos);
+        return true;
+    }
+
+    private void handle(Main m, JsonChangeEventDecoder decoder, BatchChangeConsumer<ChangeEvent<String, String>> consumer,
+                        List<ChangeEvent<String, String>> batch, long[] readNanos) throws InterruptedException {
+        if (consumer == null) {
+            for (int index = 0; index < batch.size(); index++) {
+                Main.consumeChangeEvent(m, batch.get(index), decoder);
+                latency.recordSince(readNanos[index]);
+            }
+        } else {
+            consumer.handleBatch(batch, COMMITTER);
+            long now = System.nanoTime();
+            for (int index = 0; index < batch.size(); index++) {
+                latency.record(now - readNanos[index]);
+            }
+        }
+        events += batch.size();
+        maxLiveJobs = Math.max(maxLiveJobs, Main.scripts.get().size());
+        batch.clear();
+    }
+
+    // A change event with schemas enabled, or an object holding the key and value of one. Null if the line is neither.
+    static ChangeEvent<String, String> parse(String line) {
+        JsonObject object;
+        try {
+            JsonElement element = JsonParser.parseString(line);
+            if (!element.isJsonObject()) {
+                return null;
+            }
+            object = element.getAsJsonObject();
+        } catch (JsonParseException e) {
+            return null;
+        }
+        if (object.has("payload") || object.has("schema")) {
+            return new CapturedChangeEvent(null, line);
+        }
+        if (!object.has("value")) {
+            return null;
+        }
+        return new CapturedChangeEvent(textOf(object.get("key")), textOf(object.get("value")));
+    }
+
+    private static String textOf(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        return element.isJsonPrimitive() ? element.getAsString() : element.toString(); // Either a JSON document or one as a string.
+    }
+
+    private void report(Main m, long elapsedNanos) {
+        long rows = 0;
+        long bytes = 0;
+        for (TableMetrics table : m.getMetrics().getTables()) {
+            rows += table.getRowsWritten();
+            bytes += table.getBytesWritten();
+        }
+        long inputBytes = 0;
+        try {
+            inputBytes = Files.size(path);
+        } catch (IOException e) {
+            LOG.warn("Could not get the size of '{}': {}", path, e.getMessage());
+        }
+        double seconds = Math.max(1, elapsedNanos) / 1e9;
+        long processes = m.getScriptSpawner() == null ? 0 : m.getScriptSpawner().getSpawns();
+        LOG.info("Replayed {} change events from '{}' in {} ms.\n"
+                        + "    Rows written: {} ({} rows/s)\n"
+                        + "    Bytes written: {} ({} MB/s); bytes read: {} ({} MB/s)\n"
+                        + "    Latency from reading a change event until it was handled (p50 / p99 / p99.9 / max): {} / {} / {} / {}\n"
+                        + "    SortCL processes started: {}; jobs started: {}; most jobs live at once: {}",
+                events, path, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                rows, Math.round(rows / seconds),
+                bytes, String.format("%.2f", bytes / seconds / 1e6), inputBytes, String.format("%.2f", inputBytes / seconds / 1e6),
+                ReplicationMetrics.formatNanos(latency.getPercentileNanos(0.5)), ReplicationMetrics.formatNanos(latency.getPercentileNanos(0.99)),
+                ReplicationMetrics.formatNanos(latency.getPercentileNanos(0.999)), ReplicationMetrics.formatNanos(latency.getMaxNanos()),
+                processes, m.getMetrics().getJobsStarted(), maxLiveJobs);
+        if (reportPath == null) {
+            return;
+        }
+        JsonObject report = new JsonObject();
+        report.addProperty("file", path.toString());
+        report.addProperty("events", events);
+        report.addProperty("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        report.addProperty("rowsWritten", rows);
+        report.addProperty("rowsPerSecond", rows / seconds);
+        report.addProperty("bytesWritten", bytes);
+        report.addProperty("bytesWrittenPerSecond", bytes / seconds);
+        report.addProperty("bytesRead", inputBytes);
+        report.addProperty("bytesReadPerSecond", inputBytes / seconds);
+        report.addProperty("latencyP50Micros", latency.getP50Micros());
+        report.addProperty("latencyP99Micros", latency.getP99Micros());
+        report.addProperty("latencyP999Micros", latency.getP999Micros());
+        report.addProperty("latencyMaxMicros", latency.getMaxMicros());
+        report.addProperty("processesStarted", processes);
+        report.addProperty("jobsStarted", m.getMetrics().getJobsStarted());
+        report.addProperty("maxLiveJobs", maxLiveJobs);
+        try {
+            Files.write(Paths.get(reportPath), new GsonBuilder().setPrettyPrinting().create().toJson(report).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | InvalidPathException e) {
+            LOG.warn("Could not write the replay report to '{}': {}", reportPath, e.getMessage());
+        }
+    }
+
+    private static final class CapturedChangeEvent implements ChangeEvent<String, String> {
+        private final String key;
+        private final String value;
+
+        CapturedChangeEvent(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+
+        @Override
+        public String destination() {
+            return null;
+        }
+    }
+
+    // Offsets of replayed change events are not kept.
+    private static final class DiscardingCommitter implements DebeziumEngine.RecordCommitter<ChangeEvent<String, String>> {
+        @Override
+        public void markProcessed(ChangeEvent<String, String> record) {
+        }
+
+        @Override
+        public void markBatchFinished() {
+        }
+
+        @Override
+        public void markProcessed(ChangeEvent<String, String> record, DebeziumEngine.Offsets sourceOffsets) {
+        }
+
+        @Override
+        public DebeziumEngine.Offsets buildOffsets() {
+            return (key, value) -> {
+            };
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: A change event decoded from the Debezium engine, independent of the format it was delivered in. For row changes it holds
+ * the image of the row that is replicated (the "after" image, or the "before" image of a delete) as raw values, which are encoded
+ * through the schema plan of the table when they are written to a SortCL job.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import java.util.List;
+
+public class ChangeRow {
+    final static String STRUCTURE_CHANGE_OPERATION = ""; // Structure change events carry no operation.
+
+    String operation;
+    String sourceSchema;
+    String sourceTable;
+    String sourceTableIdentifier;
+    Object[] values; // Raw values of the row image, in column order; null when the operation is not replicated.
+    SchemaPlan schemaPlan;
+    String ddl; // Statement of a structure change event.
+    long sourceTimestamp; // When the change was made in the source database (payload.source.ts_ms), or 0 if unknown.
+    long eventTimestamp; // When Debezium handled the change (payload.ts_ms), or 0 if unknown.
+
+    ChangeRow(String operation, String sourceSchema, String sourceTable) {
+        this.operation = operation;
+        this.sourceSchema = sourceSchema;
+        this.sourceTable = sourceTable;
+        this.sourceTableIdentifier = sourceSchema + "." + sourceTable;
+    }
+
+    // The same row image, replicated as another operation.
+    public ChangeRow withOperation(String operation) {
+        ChangeRow row = new ChangeRow(operation, sourceSchema, sourceTable);
+        row.setValues(values);
+        row.setSchemaPlan(schemaPlan);
+        row.setSourceTimestamp(sourceTimestamp);
+        row.setEventTimestamp(eventTimestamp);
+        return row;
+    }
+
+    public boolean isStructureChange() {
+        return STRUCTURE_CHANGE_OPERATION.equals(operation);
+    }
+
+    // The value of a column as the text sent to SortCL.
+    public String getString(int index) {
+        return schemaPlan.render(index, values[index]);
+    }
+
+    // Encode the values of the row into the bytes sent to SortCL, with the separator between values.
+    public void encode(byte[] separator, RowBuffer out) {
+        schemaPlan.encode(values, separator, out);
+    }
+
+    public List<String> getColumns() {
+        return schemaPlan.getColumns();
+    }
+
+    public String getKeyField() {
+        return schemaPlan.getKeyField();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getSourceSchema() {
+        return sourceSchema;
+    }
+
+    public String getSourceTable() {
+        return sourceTable;
+    }
+
+    public String getSourceTableIdentifier() {
+        return sourceTableIdentifier;
+    }
+
+    public Object[] getValues() {
+        return values;
+    }
+
+    public void setValues(Object[] values) {
+        this.values = values;
+    }
+
+    public SchemaPlan getSchemaPlan() {
+        return schemaPlan;
+    }
+
+    public void setSchemaPlan(SchemaPlan schemaPlan) {
+        this.schemaPlan = schemaPlan;
+    }
+
+    public String getDdl() {
+        return ddl;
+    }
+
+    public void setDdl(String ddl) {
+        this.ddl = ddl;
+    }
+
+    public long getSourceTimestamp() {
+        return sourceTimestamp;
+    }
+
+    public void setSourceTimestamp(long sourceTimestamp) {
+        this.sourceTimestamp = sourceTimestamp;
+    }
+
+    public long getEventTimestamp() {
+        return eventTimestamp;
+    }
+
+    public void setEventTimestamp(long eventTimestamp) {
+        this.eventTimestamp = eventTimestamp;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Remembers which rule, if any, each column of each source table was classified to, so columns are only matched against
+ * the data class library once. The decisions are saved to a local file and reused after a restart, for as long as the libraries they
+ * were made with are unchanged: the content of the data class and rules libraries, and the size and modification time of set files.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ClassificationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ClassificationCache.class);
+    final static String LIBRARY_HASH_KEY = "libraryHash"; // Entry of the cache file holding the hash of the libraries it is valid for.
+    final static String UNCLASSIFIED = ""; // Decision recorded for a column that matched no data class.
+    final static char SEPARATOR = '|'; // Separates the rule type from the rule expression in a decision.
+
+    private final String path; // Cache file, or null to keep decisions in memory only.
+    private final String libraryHash;
+    private final DataClassLibrary dataClassLibrary; // The library the decisions are made with.
+    private final ConcurrentHashMap<String, String> decisions = new ConcurrentHashMap<>(); // Keyed by source table and column.
+
+    ClassificationCache(String path, String libraryHash, DataClassLibrary dataClassLibrary) {
+        this.path = path;
+        this.libraryHash = libraryHash;
+        this.dataClassLibrary = dataClassLibrary;
+        load();
+    }
+
+    private void load() {
+        if (path == null || !Files.exists(Paths.get(path))) {
+            return;
+        }
+        Properties stored = new Properties();
+        try (InputStream input = new FileInputStream(path)) {
+            stored.load(input);
+        } catch (IOException e) {
+            LOG.warn("Could not read classification cache '{}'. Columns will be classified again.", path);
+            return;
+        }
+        if (!libraryHash.equals(stored.getProperty(LIBRARY_HASH_KEY))) {
+            LOG.info("The data class or rules library has changed since classification cache '{}' was written. Columns will be classified again.", path);
+            return;
+        }
+        for (String name : stored.stringPropertyNames()) {
+            if (!name.equals(LIBRARY_HASH_KEY)) {
+                decisions.put(name, stored.getProperty(name));
+            }
+        }
+        LOG.info("Loaded {} column classifications from '{}'.", decisions.size(), path);
+    }
+
+    private synchronized void save() {
+        if (path == null) {
+            return;
+        }
+        Properties stored = new Properties();
+        stored.putAll(decisions);
+        stored.setProperty(LIBRARY_HASH_KEY, libraryHash);
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream output = new FileOutputStream(temporary.toFile())) {
+            stored.store(output, "Ripcurrent column classifications");
+        } catch (IOException e) {
+            LOG.warn("Could not write classification cache '{}'.", path);
+            return;
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not replace classification cache '{}'.", path);
+        }
+    }
+
+    // Apply the rules of the data classes matched by the columns of a new job, classifying only the columns not seen before.
+    public void classify(String sourceTableIdentifier, List<String> values, ArrayList<SclField> fields) {
+        boolean changed = false;
+        for (int index = 0; index < values.size() && index < fields.size(); index++) {
+            SclField field = fields.get(index);
+            String column = sourceTableIdentifier + "." + field.getName();
+            String decision = decisions.get(column);
+            if (decision == null) {
+                Rule rule = Main.classifyColumn(values.get(index), field.getName(), dataClassLibrary);
+                decision = rule == null ? UNCLASSIFIED : rule.getType() + SEPARATOR + rule.getRule();
+                decisions.put(column, decision);
+                changed = true;
+            }
+            if (!decision.equals(UNCLASSIFIED)) {
+                int separator = decision.indexOf(SEPARATOR);
+                field.expressionApplied = true;
+                field.ruleType = decision.substring(0, separator);
+                field.expression = decision.substring(separator + 1);
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    // True if the columns of a job would be classified differently now, from the values it was first classified with.
+    public boolean isClassificationChanged(SclScript script) {
+        if (script.getClassifiedValues() == null) {
+            return false;
+        }
+        ArrayList<SclField> fields = new ArrayList<>();
+        for (SclField field : script.getFields()) {
+            fields.add(new SclField(field.getName()));
+        }
+        classify(script.getSourceTableIdentifier(), script.getClassifiedValues(), fields);
+        for (int index = 0; index < fields.size(); index++) {
+            SclField current = script.getFields().get(index);
+            SclField reclassified = fields.get(index);
+            if (!Objects.equals(current.getExpressionApplied(), reclassified.getExpressionApplied()) || !Objects.equals(current.getExpression(), reclassified.getExpression()) || !Objects.equals(current.getRuleType(), reclassified.getRuleType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public DataClassLibrary getDataClassLibrary() {
+        return dataClassLibrary;
+    }
+
+    public Map<String, String> getDecisions() {
+        return decisions;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Decode change events delivered by the Debezium embedded engine as Kafka Connect records. The operation, row image,
+ * source block and key schema are read straight from the record's Struct, so nothing is serialized to JSON and parsed back.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import io.debezium.engine.ChangeEvent;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.util.List;
+
+public class ConnectChangeEventDecoder implements ChangeEventDecoder<ChangeEvent<SourceRecord, SourceRecord>> {
+    private final Main m;
+    private final String schemaFieldName;
+
+    ConnectChangeEventDecoder(Main m) {
+        this.m = m;
+        this.schemaFieldName = Main.getSchemaFieldName(m);
+    }
+
+    @Override
+    public ChangeRow decode(ChangeEvent<SourceRecord, SourceRecord> record) {
+        SourceRecord sourceRecord = record.value();
+        if (sourceRecord == null || !(sourceRecord.value() instanceof Struct)) {
+            return null;
+        }
+        Struct value = (Struct) sourceRecord.value();
+        String operation = stringOf(value, "op");
+        if (operation == null) {
+            operation = ChangeRow.STRUCTURE_CHANGE_OPERATION;
+        }
+        Struct source = value.schema().field("source") != null ? value.getStruct("source") : null;
+        ChangeRow row = new ChangeRow(operation, stringOf(source, schemaFieldName), stringOf(source, "table"));
+        if (source != null && source.schema().field("ts_ms") != null && source.get("ts_ms") instanceof Number) {
+            row.setSourceTimestamp(((Number) source.get("ts_ms")).longValue());
+        }
+        if (value.schema().field("ts_ms") != null && value.get("ts_ms") instanceof Number) {
+            row.setEventTimestamp(((Number) value.get("ts_ms")).longValue());
+        }
+        if (row.isStructureChange()) {
+            row.setDdl(stringOf(value, "ddl"));
+            return row;
+        }
+        if (!Main.isReplicated(m, operation)) {
+            return row;
+        }
+        Field imageField = value.schema().field(operation.equals("d") ? "before" : "after");
+        Struct image = value.getStruct(imageField.name());
+        SchemaPlan schemaPlan = m.getSchemaPlanCache().get(row.getSourceTableIdentifier(), imageField.schema(), sourceRecord.keySchema());
+        List<Field> fields = schemaPlan.getSchema().fields();
+        Object[] values = new Object[fields.size()];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = image.get(fields.get(index));
+        }
+        row.setSchemaPlan(schemaPlan);
+        row.setValues(values);
+        return row;
+    }
+
+    private static String stringOf(Struct struct, String name) {
+        if (struct == null || struct.schema().field(name) == null) {
+            return null;
+        }
+        Object value = struct.get(name);
+        return value == null ? null : value.toString();
+    }
+}
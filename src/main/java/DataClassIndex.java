@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: The data classes of a library compiled for matching a column in one pass. The content patterns of all data classes
+ * are combined into a single regular expression, as are the column name patterns, so each value and each name is scanned once
+ * instead of once per data class. The first data class in library order whose content or name matches wins, as before. Patterns
+ * that cannot be combined are matched one at a time.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+public class DataClassIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(DataClassIndex.class);
+    private final List<Rule> rules = new ArrayList<>(); // Rule of each data class, in priority order.
+    private final CombinedPattern dataPatterns = new CombinedPattern();
+    private final CombinedPattern namePatterns = new CombinedPattern();
+    private final List<Integer> setPriorities = new ArrayList<>(); // Priority of each data class matched by other matchers, such as sets.
+    private final List<DataMatcher> setMatchers = new ArrayList<>();
+
+    // Add a data class with the next lower priority.
+    void add(Rule rule, DataClassMatcher matcher) {
+        int priority = rules.size();
+        rules.add(rule);
+        namePatterns.add(priority, matcher.getNameMatcher().getPatternString());
+        if (matcher.getDataMatcher() instanceof PatternMatcher) {
+            dataPatterns.add(priority, ((PatternMatcher) matcher.getDataMatcher()).getPatternString());
+        } else {
+            setPriorities.add(priority);
+            setMatchers.add(matcher.getDataMatcher());
+        }
+    }
+
+    // Compile the combined patterns once every data class has been added.
+    void compile() {
+        dataPatterns.compile();
+        namePatterns.compile();
+    }
+
+    // The rule of the first data class matched by a column's value or name, or null if none match.
+    public Rule match(String value, String columnName) {
+        int best = namePatterns.firstMatch(columnName, rules.size());
+        best = dataPatterns.firstMatch(value, best);
+        for (int index = 0; index < setPriorities.size() && setPriorities.get(index) < best; index++) {
+            if (setMatchers.get(index).isMatch(value)) {
+                best = setPriorities.get(index);
+                break;
+            }
+        }
+        return best < rules.size() ? rules.get(best) : null;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    // A list of patterns matched together as the alternatives of one expression. An alternation is tried from left to right, so
+    // when the whole input must match, the alternative that matches is the first one in the list that can match on its own.
+    static class CombinedPattern {
+        private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z]*x");
+        private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<[a-zA-Z]");
+        private final List<Integer> priorities = new ArrayList<>();
+        private final List<String> patterns = new ArrayList<>();
+        private Pattern combined; // All patterns that can be combined, or null if there are none.
+        private int[] combinedPriorities; // Priority of each alternative of the combined pattern.
+        private int[] combinedGroups; // Group that captures each alternative of the combined pattern.
+        private final List<Integer> separatePriorities = new ArrayList<>(); // Patterns that cannot be combined are matched alone.
+        private final List<Pattern> separatePatterns = new ArrayList<>();
+
+        void add(int priority, String pattern) {
+            priorities.add(priority);
+            patterns.add(pattern);
+        }
+
+        // Combine the patterns. Should the combined pattern not compile after all, every pattern is matched alone instead.
+        void compile() {
+            try {
+                compile(false);
+            } catch (PatternSyntaxException e) {
+                LOG.warn("Could not combine the data class patterns: {}. They will be matched one at a time.", e.getDescription());
+                compile(true);
+            }
+        }
+
+        private void compile(boolean allAlone) {
+            combined = null;
+            separatePriorities.clear();
+            separatePatterns.clear();
+            StringBuilder expression = new StringBuilder();
+            List<Integer> alternativePriorities = new ArrayList<>();
+            List<Integer> alternativeGroups = new ArrayList<>();
+            int group = 1;
+            for (int index = 0; index < patterns.size(); index++) {
+                Pattern pattern;
+                try {
+                    pattern = Pattern.compile(patterns.get(index));
+                } catch (PatternSyntaxException e) { // Cannot match anything, so it does not stop the other data classes from matching.
+                    LOG.warn("Invalid data class pattern '{}': {}", patterns.get(index), e.getDescription());
+                    continue;
+                }
+                if (allAlone || mustMatchAlone(patterns.get(index))) {
+                    separatePriorities.add(priorities.get(index));
+                    separatePatterns.add(pattern);
+                    continue;
+                }
+                if (expression.length() > 0) {
+                    expression.append('|');
+                }
+                expression.append('(').append(patterns.get(index)).append(')');
+                alternativePriorities.add(priorities.get(index));
+                alternativeGroups.add(group);
+                group += 1 + pattern.matcher("").groupCount();
+            }
+            if (!alternativePriorities.isEmpty()) {
+                combined = Pattern.compile(expression.toString());
+                combinedPriorities = new int[alternativePriorities.size()];
+                combinedGroups = new int[alternativeGroups.size()];
+                for (int index = 0; index < combinedPriorities.length; index++) {
+                    combinedPriorities[index] = alternativePriorities.get(index);
+                    combinedGroups[index] = alternativeGroups.get(index);
+                }
+            }
+        }
+
+        // Back references change meaning once groups are renumbered, quoting or comments can run past the end of an alternative, and a
+        // group name can only be used once in a pattern.
+        static boolean mustMatchAlone(String pattern) {
+            if (COMMENTS_FLAG.matcher(pattern).find() || NAMED_GROUP.matcher(pattern).find()) {
+                return true;
+            }
+            for (int index = 0; index < pattern.length() - 1; index++) {
+                if (pattern.charAt(index) == '\\') {
+                    char next = pattern.charAt(index + 1);
+                    if ((next >= '1' && next <= '9') || next == 'k' || next == 'Q') {
+                        return true;
+                    }
+                    index++; // Skip the escaped character.
+                }
+            }
+            return false;
+        }
+
+        // The priority of the first pattern matching the whole input, if it is below the limit; otherwise the limit.
+        int firstMatch(String input, int limit) {
+            int best = limit;
+            if (combined != null) {
+                Matcher matcher = combined.matcher(input);
+                if (matcher.matches()) {
+                    for (int index = 0; index < combinedGroups.length; index++) {
+                        if (matcher.start(combinedGroups[index]) >= 0) {
+                            best = Math.min(best, combinedPriorities[index]);
+                            break;
+                        }
+                    }
+                }
+            }
+            for (int index = 0; index < separatePatterns.size() && separatePriorities.get(index) < best; index++) {
+                if (separatePatterns.get(index).matcher(input).matches()) {
+                    best = separatePriorities.get(index);
+                    break;
+                }
+            }
+            return best;
+        }
+    }
+}
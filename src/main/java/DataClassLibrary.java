@@ -9,71 +9,141 @@
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.File;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 
 public class DataClassLibrary {
     private static final Logger LOG = LoggerFactory.getLogger(DataClassLibrary.class);
-    Map<Map<String, Rule>, DataClassMatcher> dataMatcherMap = new HashMap<>();
+    Map<Map<String, Rule>, DataClassMatcher> dataMatcherMap = new LinkedHashMap<>(); // In library order, which sets the priority of the data classes.
+    DataClassIndex dataClassIndex = new DataClassIndex(); // The data classes compiled for matching.
+    List<String> setPaths = new ArrayList<>(); // Set files used by the matchers.
+    List<Definition> definitions = new ArrayList<>(); // The data classes as read from the library, in order.
+    boolean parsed; // False if a library was configured but could not be read.
+
+    // An empty library, to which data classes are added from a library snapshot.
+    DataClassLibrary() {
+        this.parsed = true;
+    }
 
     DataClassLibrary(String filePath, Map<String, Rule> rules) {
-        try {
-            File dataClassLibraryFile = new File(filePath);
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(dataClassLibraryFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("dataClasses");
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-                    String[] defaultRule;
-                    String ruleExpression;
-                    try {
-                        defaultRule = eElement.getChildNodes().item(0).getNextSibling().getAttributes().getNamedItem("href").getNodeValue().split("#");
-                        if (rules.get(defaultRule[1]) != null) {
-                            ruleExpression = rules.get(defaultRule[1]).getRule();
-                        } else { // Default
-                            continue;
-                        }
-                    } catch (NullPointerException e) {
-                        continue;
-                    }
-                    String nameMatcher = eElement.getAttributes().getNamedItem("nameMatcher").getNodeValue();
-                    if (nameMatcher == null) {
-                        nameMatcher = "";
-                    }
-                    NodeList matchersList = eElement.getElementsByTagName("matchers");
-                    for (int temp2 = 0; temp2 < matchersList.getLength(); temp2++) {
-                        Node nNode2 = matchersList.item(temp2);
-                        HashMap<String, Rule> ruleMap = new HashMap<>();
-                        ruleMap.put(((Element) nNode).getAttribute("name"), new Rule(rules.get(defaultRule[1]).getType(), ruleExpression));
-                        if (nNode2.getAttributes().getNamedItem("type") != null && nNode2.getAttributes().getNamedItem("type").getNodeValue().equals("FILE")) {
-                            try {
-                                dataMatcherMap.put(ruleMap, new DataClassMatcher(new NameMatcher(nameMatcher), new SetMatcher(nNode2.getAttributes().getNamedItem("details").getNodeValue())));
-                            } catch (IOException | URISyntaxException e) {
-                                LOG.warn("Set file '{}' does not exist...", nNode2.getAttributes().getNamedItem("details").getNodeValue());
-                            }
-                        } else {
-                            dataMatcherMap.put(ruleMap, new DataClassMatcher(new NameMatcher(nameMatcher), new PatternMatcher(nNode2.getAttributes().getNamedItem("details").getNodeValue())));
-                        }
-                    }
+        parsed = filePath == null;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(filePath))) {
+            XMLStreamReader reader = LibraryXml.open(input);
+            LibraryXml.nextTag(reader); // The library element; of its children, only the data classes are read.
+            while (LibraryXml.nextTag(reader) == XMLStreamConstants.START_ELEMENT) {
+                if (reader.getLocalName().equals("dataClasses")) {
+                    readDataClass(reader, rules);
+                } else {
+                    LibraryXml.skipElement(reader);
                 }
             }
+            reader.close();
+            parsed = true;
         } catch (Exception e) {
             LOG.warn("Could not parse data class library '{}'...", filePath, e);
         }
+        compileIndex();
+    }
+
+    // Compile the data classes added so far for matching.
+    void compileIndex() {
+        for (Map.Entry<Map<String, Rule>, DataClassMatcher> entry : dataMatcherMap.entrySet()) {
+            dataClassIndex.add(entry.getKey().values().iterator().next(), entry.getValue());
+        }
+        dataClassIndex.compile();
     }
 
+    // Read a data class and its matchers. Data classes are skipped unless their first child is a default rule found in the rules library.
+    private void readDataClass(XMLStreamReader reader, Map<String, Rule> rules) throws XMLStreamException {
+        String dataClassName = LibraryXml.attribute(reader, "name");
+        String nameMatcher = LibraryXml.attribute(reader, "nameMatcher");
+        if (nameMatcher == null) {
+            nameMatcher = "";
+        }
+        Rule defaultRule = null;
+        boolean firstChild = true;
+        while (LibraryXml.nextTag(reader) == XMLStreamConstants.START_ELEMENT) {
+            if (firstChild) {
+                firstChild = false;
+                String href = LibraryXml.attribute(reader, "href");
+                String[] ruleReference = href == null ? new String[0] : href.split("#");
+                defaultRule = ruleReference.length > 1 ? rules.get(ruleReference[1]) : null;
+            }
+            if (defaultRule != null && reader.getLocalName().equals("matchers")) {
+                addDataClass(new Definition(dataClassName == null ? "" : dataClassName, defaultRule, nameMatcher, "FILE".equals(LibraryXml.attribute(reader, "type")), LibraryXml.attribute(reader, "details")));
+            }
+            LibraryXml.skipElement(reader);
+        }
+    }
+
+    // Add a data class matcher with the next lower priority. A matcher whose name or data pattern does not compile is skipped, so the
+    // rest of the library can still be used.
+    void addDataClass(Definition definition) {
+        if (definition.details == null) {
+            LOG.warn("Data class '{}' has a matcher without details. It will be skipped.", definition.name);
+            return;
+        }
+        HashMap<String, Rule> ruleMap = new HashMap<>();
+        ruleMap.put(definition.name, new Rule(definition.rule.getType(), definition.rule.getRule()));
+        try {
+            if (definition.setFile) {
+                setPaths.add(definition.details);
+                dataMatcherMap.put(ruleMap, new DataClassMatcher(new NameMatcher(definition.nameMatcher), new SetMatcher(definition.details)));
+            } else {
+                dataMatcherMap.put(ruleMap, new DataClassMatcher(new NameMatcher(definition.nameMatcher), new PatternMatcher(definition.details)));
+            }
+        } catch (IOException | URISyntaxException e) {
+            LOG.warn("Set file '{}' does not exist...", definition.details);
+        } catch (PatternSyntaxException e) {
+            LOG.warn("Data class '{}' has a pattern that does not compile. It will be skipped: {}", definition.name, e.getMessage());
+            return;
+        }
+        definitions.add(definition);
+    }
+
+    public boolean isParsed() {
+        return parsed;
+    }
+
+    public List<Definition> getDefinitions() {
+        return definitions;
+    }
+
+    public DataClassIndex getDataClassIndex() {
+        return dataClassIndex;
+    }
+
+    public List<String> getSetPaths() {
+        return setPaths;
+    }
+
+    // A matcher of a data class as it appears in the library.
+    static class Definition {
+        final String name;
+        final Rule rule; // The default rule of the data class.
+        final String nameMatcher;
+        final boolean setFile; // True if the details are the path of a set file, false if they are a pattern.
+        final String details;
+
+        Definition(String name, Rule rule, String nameMatcher, boolean setFile, String details) {
+            this.name = name;
+            this.rule = rule;
+            this.nameMatcher = nameMatcher;
+            this.setFile = setFile;
+            this.details = details;
+        }
+    }
 }
@@ -1,38 +1,352 @@
 /*
  * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
  *
- * Description: Convert internal date/time values received from the database to ISO string representation.
+ * Description: Convert internal date/time values received from the database to ISO string representation. The text is worked out
+ * without java.time objects and written either as a String or straight into a char or byte buffer supplied by the caller, laid out as
+ * LocalDate, LocalTime and LocalDateTime lay it out: seconds only when they are set, and fractions of a second as 3, 6 or 9 digits.
  *
  * Contributors:
  *     devonk
  */
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneOffset;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.ChronoField;
 import java.util.concurrent.TimeUnit;
 
 public class DateTimeConversionUtil {
-
+    static final int MAX_DATE_LENGTH = 16; // +999999999-12-31
+    static final int MAX_TIME_LENGTH = 18; // 23:59:59.999999999
+    static final int MAX_DATE_TIME_LENGTH = MAX_DATE_LENGTH + 1 + MAX_TIME_LENGTH;
+    private static final long DAYS_0000_TO_1970 = 719528; // Days from Jan. 1 of year 0 until Jan. 1, 1970.
+    private static final long DAYS_PER_CYCLE = 146097; // Days in 400 years.
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+    private static final ThreadLocal<byte[]> TEXT = ThreadLocal.withInitial(() -> new byte[MAX_DATE_TIME_LENGTH]); // For the char and String forms.
 
     // Get in a number that represents the number of days (positive or negative) since Jan. 1, 1970.
     // Any extra day that is a part of a leap year is included in this number.
     // Leap years – every 4 years, except every 100 years – UNLESS the year is also divisible by 400.
     public static String integerToDate(Integer number) {
-        LocalDate date = LocalDate.ofEpochDay(number);
-        return date.toString();
+        return date(number);
     }
 
     public static String numberToTime(long number) { // Convert microseconds of day to time.
-        LocalTime time = LocalTime.ofNanoOfDay(number * 1000);
-        return time.toString();
+        return time(number, TimeUnit.MICROSECONDS);
     }
 
     public static String numberToDateTime(long number) { // Convert milliseconds since 1970 to datetime.
-        long secondsSince1970 = TimeUnit.MILLISECONDS.toSeconds(number);
-        int remainingMicros = 0;
-        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(secondsSince1970, remainingMicros, ZoneOffset.UTC);
-        return dateTime.toString();
+        return timestamp(number, TimeUnit.MILLISECONDS);
+    }
+
+    public static String date(long epochDay) {
+        byte[] text = TEXT.get();
+        return new String(text, 0, formatDate(epochDay, text, 0), StandardCharsets.ISO_8859_1);
+    }
+
+    // A time of day given in the unit since midnight: microseconds for a MicroTime, nanoseconds for a NanoTime.
+    public static String time(long value, TimeUnit unit) {
+        byte[] text = TEXT.get();
+        return new String(text, 0, formatTime(value, unit, text, 0), StandardCharsets.ISO_8859_1);
+    }
+
+    // A timestamp given in the unit since 1970 (UTC): milliseconds for a Timestamp, microseconds for a MicroTimestamp, nanoseconds for
+    // a NanoTimestamp.
+    public static String timestamp(long value, TimeUnit unit) {
+        byte[] text = TEXT.get();
+        return new String(text, 0, formatTimestamp(value, unit, text, 0), StandardCharsets.ISO_8859_1);
+    }
+
+    // A ZonedTimestamp as the date and time in UTC, like the other timestamps, or the value as it is if it is not one.
+    public static String zonedTimestamp(String value) {
+        byte[] text = TEXT.get();
+        int length = formatZonedTimestamp(value, text, 0);
+        return length < 0 ? value : new String(text, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // The formatters below write the text into out from offset on and return the offset after it. The buffer must have room for the
+    // MAX_*_LENGTH of the value.
+
+    public static int formatDate(long epochDay, char[] out, int offset) {
+        byte[] text = TEXT.get();
+        return widen(text, formatDate(epochDay, text, 0), out, offset);
+    }
+
+    public static int formatTime(long value, TimeUnit unit, char[] out, int offset) {
+        byte[] text = TEXT.get();
+        return widen(text, formatTime(value, unit, text, 0), out, offset);
+    }
+
+    public static int formatTimestamp(long value, TimeUnit unit, char[] out, int offset) {
+        byte[] text = TEXT.get();
+        return widen(text, formatTimestamp(value, unit, text, 0), out, offset);
+    }
+
+    // Returns -1, having written nothing, if the value is not a ZonedTimestamp.
+    public static int formatZonedTimestamp(CharSequence value, char[] out, int offset) {
+        byte[] text = TEXT.get();
+        int length = formatZonedTimestamp(value, text, 0);
+        return length < 0 ? -1 : widen(text, length, out, offset);
+    }
+
+    private static int widen(byte[] text, int length, char[] out, int offset) {
+        for (int index = 0; index < length; index++) {
+            out[offset + index] = (char) text[index];
+        }
+        return offset + length;
+    }
+
+    // The bytes are ASCII.
+    public static int formatDate(long epochDay, byte[] out, int offset) {
+        ChronoField.EPOCH_DAY.checkValidValue(epochDay); // Fails as LocalDate.ofEpochDay does.
+        // The proleptic Gregorian calendar, worked out from a year starting in March as LocalDate.ofEpochDay does.
+        long zeroDay = epochDay + DAYS_0000_TO_1970 - 60;
+        long adjust = 0;
+        if (zeroDay < 0) {
+            long adjustCycles = (zeroDay + 1) / DAYS_PER_CYCLE - 1;
+            adjust = adjustCycles * 400;
+            zeroDay += -adjustCycles * DAYS_PER_CYCLE;
+        }
+        long year = (400 * zeroDay + 591) / DAYS_PER_CYCLE;
+        long dayOfYear = zeroDay - (365 * year + year / 4 - year / 100 + year / 400);
+        if (dayOfYear < 0) {
+            year--;
+            dayOfYear = zeroDay - (365 * year + year / 4 - year / 100 + year / 400);
+        }
+        int marchMonth = ((int) dayOfYear * 5 + 2) / 153;
+        int month = (marchMonth + 2) % 12 + 1;
+        int day = (int) dayOfYear - (marchMonth * 306 + 5) / 10 + 1;
+        year += adjust + marchMonth / 10;
+        if (year < 0) {
+            out[offset++] = '-';
+        } else if (year > 9999) {
+            out[offset++] = '+';
+        }
+        offset = digits(Math.abs(year), 4, out, offset);
+        out[offset++] = '-';
+        offset = digits(month, 2, out, offset);
+        out[offset++] = '-';
+        return digits(day, 2, out, offset);
+    }
+
+    public static int formatTime(long value, TimeUnit unit, byte[] out, int offset) {
+        long nanoOfDay = unit.toNanos(value);
+        ChronoField.NANO_OF_DAY.checkValidValue(nanoOfDay); // Fails as LocalTime.ofNanoOfDay does.
+        return formatTimeOfDay(nanoOfDay / NANOS_PER_SECOND, (int) (nanoOfDay % NANOS_PER_SECOND), out, offset);
+    }
+
+    public static int formatTimestamp(long value, TimeUnit unit, byte[] out, int offset) {
+        if (unit.compareTo(TimeUnit.SECONDS) >= 0) {
+            return formatDateTime(unit.toSeconds(value), 0, out, offset);
+        }
+        long perSecond = unit.convert(1, TimeUnit.SECONDS);
+        return formatDateTime(Math.floorDiv(value, perSecond), (int) (Math.floorMod(value, perSecond) * (NANOS_PER_SECOND / perSecond)), out, offset);
+    }
+
+    // Debezium writes a ZonedTimestamp as an ISO date-time with an offset, such as 2022-04-15T10:20:30.123456Z, or +02:00 in place of
+    // the Z for a zone other than UTC. Returns -1, having written nothing, if the value is not one.
+    public static int formatZonedTimestamp(CharSequence value, byte[] out, int offset) {
+        int length = value.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+            negative = value.charAt(0) == '-';
+            index++;
+        }
+        int start = index;
+        long year = 0;
+        while (index < length && index - start < 9 && isDigit(value.charAt(index))) {
+            year = year * 10 + (value.charAt(index++) - '0');
+        }
+        if (index - start < 4) {
+            return -1;
+        }
+        year = negative ? -year : year;
+        int month = field(value, index, '-');
+        int day = field(value, index + 3, '-');
+        int hour = field(value, index + 6, 'T');
+        int minute = field(value, index + 9, ':');
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59) {
+            return -1;
+        }
+        index += 12;
+        int second = 0;
+        int nano = 0;
+        if (index < length && value.charAt(index) == ':') {
+            second = field(value, index, ':');
+            if (second < 0 || second > 59) {
+                return -1;
+            }
+            index += 3;
+            if (index < length && value.charAt(index) == '.') {
+                int digits = 0;
+                for (index++; index < length && isDigit(value.charAt(index)) && digits < 9; index++, digits++) {
+                    nano = nano * 10 + (value.charAt(index) - '0');
+                }
+                if (digits == 0) {
+                    return -1;
+                }
+                for (; digits < 9; digits++) {
+                    nano *= 10;
+                }
+            }
+        }
+        int offsetSeconds = 0;
+        if (index < length && value.charAt(index) == 'Z') {
+            index++;
+        } else if (index < length && (value.charAt(index) == '+' || value.charAt(index) == '-')) {
+            char sign = value.charAt(index);
+            int offsetHours = field(value, index, sign);
+            int offsetMinutes = field(value, index + 3, ':');
+            if (offsetHours < 0 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return -1;
+            }
+            offsetSeconds = offsetHours * 3600 + offsetMinutes * 60;
+            index += 6;
+            if (index < length && value.charAt(index) == ':') {
+                int offsetSecond = field(value, index, ':');
+                if (offsetSecond < 0 || offsetSecond > 59) {
+                    return -1;
+                }
+                offsetSeconds += offsetSecond;
+                index += 3;
+            }
+            if (offsetSeconds > MAX_OFFSET_SECONDS) {
+                return -1;
+            }
+            offsetSeconds = sign == '-' ? -offsetSeconds : offsetSeconds;
+        } else {
+            return -1;
+        }
+        if (index != length) {
+            return -1;
+        }
+        long epochSecond = toEpochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second - offsetSeconds;
+        if (!ChronoField.EPOCH_DAY.range().isValidValue(Math.floorDiv(epochSecond, SECONDS_PER_DAY))) {
+            return -1;
+        }
+        return formatDateTime(epochSecond, nano, out, offset);
+    }
+
+    // Two digits following the given separator at the index, or -1 if they are not there.
+    private static int field(CharSequence value, int index, char separator) {
+        if (index + 2 >= value.length() || value.charAt(index) != separator || !isDigit(value.charAt(index + 1)) || !isDigit(value.charAt(index + 2))) {
+            return -1;
+        }
+        return (value.charAt(index + 1) - '0') * 10 + (value.charAt(index + 2) - '0');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLeapYear(long year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(long year, int month) {
+        return month == 2 ? (isLeapYear(year) ? 29 : 28) : (month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31);
+    }
+
+    // As LocalDate.toEpochDay works it out.
+    private static long toEpochDay(long year, int month, int day) {
+        long total = 365 * year;
+        if (year >= 0) {
+            total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        } else {
+            total -= year / -4 - year / -100 + year / -400;
+        }
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    private static int formatDateTime(long epochSecond, int nano, byte[] out, int offset) {
+        offset = formatDate(Math.floorDiv(epochSecond, SECONDS_PER_DAY), out, offset);
+        out[offset++] = 'T';
+        return formatTimeOfDay(Math.floorMod(epochSecond, SECONDS_PER_DAY), nano, out, offset);
+    }
+
+    // HH:mm, with the seconds and the fraction of a second only when they are set, as LocalTime.toString writes it.
+    private static int formatTimeOfDay(long secondOfDay, int nano, byte[] out, int offset) {
+        offset = digits(secondOfDay / 3600, 2, out, offset);
+        out[offset++] = ':';
+        offset = digits(secondOfDay / 60 % 60, 2, out, offset);
+        int second = (int) (secondOfDay % 60);
+        if (second == 0 && nano == 0) {
+            return offset;
+        }
+        out[offset++] = ':';
+        offset = digits(second, 2, out, offset);
+        if (nano == 0) {
+            return offset;
+        }
+        out[offset++] = '.';
+        if (nano % 1_000_000 == 0) {
+            return digits(nano / 1_000_000, 3, out, offset);
+        } else if (nano % 1000 == 0) {
+            return digits(nano / 1000, 6, out, offset);
+        }
+        return digits(nano, 9, out, offset);
+    }
+
+    // A number that is not negative, as at least width digits padded with zeros.
+    private static int digits(long value, int width, byte[] out, int offset) {
+        int count = 1;
+        for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+            count++;
+        }
+        count = Math.max(count, width);
+        for (int index = offset + count - 1; index >= offset; index--) {
+            out[index] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + count;
+    }
+
+    // The writers below add the text to the bytes of a row, falling back to the String for a charset that is not ASCII compatible.
+
+    public static void writeDate(long epochDay, RowBuffer out) {
+        if (!RowBuffer.ASCII_COMPATIBLE) {
+            out.putString(date(epochDay));
+            return;
+        }
+        out.reserve(MAX_DATE_LENGTH);
+        out.setLength(formatDate(epochDay, out.array(), out.length()));
+    }
+
+    public static void writeTime(long value, TimeUnit unit, RowBuffer out) {
+        if (!RowBuffer.ASCII_COMPATIBLE) {
+            out.putString(time(value, unit));
+            return;
+        }
+        out.reserve(MAX_TIME_LENGTH);
+        out.setLength(formatTime(value, unit, out.array(), out.length()));
+    }
+
+    public static void writeTimestamp(long value, TimeUnit unit, RowBuffer out) {
+        if (!RowBuffer.ASCII_COMPATIBLE) {
+            out.putString(timestamp(value, unit));
+            return;
+        }
+        out.reserve(MAX_DATE_TIME_LENGTH);
+        out.setLength(formatTimestamp(value, unit, out.array(), out.length()));
+    }
+
+    public static void writeZonedTimestamp(String value, RowBuffer out) {
+        if (!RowBuffer.ASCII_COMPATIBLE) {
+            out.putString(zonedTimestamp(value));
+            return;
+        }
+        out.reserve(MAX_DATE_TIME_LENGTH);
+        int end = formatZonedTimestamp(value, out.array(), out.length());
+        if (end < 0) {
+            out.putString(value);
+        } else {
+            out.setLength(end);
+        }
     }
 }
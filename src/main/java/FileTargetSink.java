@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Writes the rows of a table straight to its target file, in the same delimited format as a SortCL job with
+ * /PROCESS=RECORD, for tables that have no rules to apply and only replicate inserts to files. No sortcl process is started; rows are
+ * encoded as for the stdin of a job, copied into a buffer and written with a FileChannel. The file can optionally be gzip compressed,
+ * and rotated once it reaches a size or age.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+public class FileTargetSink {
+    private static final Logger LOG = LoggerFactory.getLogger(FileTargetSink.class);
+    private static final DateTimeFormatter ROTATED_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path path; // The file being written; rotated files are renamed from it.
+    private final Settings settings;
+    private final ByteBuffer buffer;
+    private final byte[] separator;
+    private FileChannel channel;
+    private OutputStream gzip; // Null unless the file is compressed.
+    private long fileBytes; // Bytes written to the current file, before compression.
+    private long openedNanos; // When the current file was opened.
+
+    // Open the target file for appending, as /APPEND does. A compressed target has .gz added to its name.
+    FileTargetSink(Path target, String separator, Settings settings) throws IOException {
+        this.path = settings.gzip ? target.resolveSibling(target.getFileName() + ".gz") : target;
+        this.settings = settings;
+        this.separator = unescapeSeparator(separator).getBytes(RowBuffer.CHARSET);
+        this.buffer = ByteBuffer.allocate(settings.bufferSize); // On the heap, as every table has a sink of its own.
+        open();
+    }
+
+    // True when a job can write its rows with a file sink instead of a sortcl process: it only appends inserts to a file in the
+    // delimited record format, and none of its columns have a rule applied.
+    static boolean canReplace(SclScript script, Settings settings) {
+        if (settings == null || script.getTarget() == null || script.getDSN() != null || !script.getOperation().equals("c")) {
+            return false;
+        }
+        if (script.getTargetProcessType() != null && !script.getTargetProcessType().equalsIgnoreCase("RECORD")) {
+            return false;
+        }
+        for (SclField field : script.getFields()) {
+            if (field.expressionApplied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The separator property holds the separator as written in a SortCL script, where a tab is \t.
+    static String unescapeSeparator(String separator) {
+        return separator.replace("\\t", "\t");
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        gzip = settings.gzip ? new GZIPOutputStream(Channels.newOutputStream(channel), settings.bufferSize, true) : null; // Appending starts another gzip member.
+        fileBytes = settings.gzip ? 0 : channel.size();
+        openedNanos = System.nanoTime();
+    }
+
+    // The separator between the values of a row, encoded.
+    public byte[] getSeparator() {
+        return separator;
+    }
+
+    // Take the encoded rows, values separated by the separator and each ending with a line separator, and rotate the file if it has
+    // reached its size or age.
+    public void writeRow(RowBuffer rows) throws IOException {
+        put(rows.array(), rows.length());
+        rows.reset();
+        if (isRotationDue()) {
+            rotate();
+        }
+    }
+
+    private void put(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (length - offset > buffer.remaining()) {
+            int chunk = buffer.remaining();
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            drain();
+        }
+        buffer.put(bytes, offset, length - offset);
+    }
+
+    // Write out the buffer.
+    private void drain() throws IOException {
+        buffer.flip();
+        fileBytes += buffer.remaining();
+        if (gzip != null) {
+            gzip.write(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    private boolean isRotationDue() {
+        return (settings.rotateBytes > 0 && fileBytes + buffer.position() >= settings.rotateBytes)
+                || (settings.rotateMillis > 0 && System.nanoTime() - openedNanos >= TimeUnit.MILLISECONDS.toNanos(settings.rotateMillis));
+    }
+
+    // Close the current file, rename it with the time it was rotated, and start a new one.
+    private void rotate() throws IOException {
+        closeFile();
+        String name = path.getFileName().toString();
+        String extension = settings.gzip ? ".gz" : "";
+        String base = name.substring(0, name.length() - extension.length()) + "." + LocalDateTime.now().format(ROTATED_SUFFIX);
+        Path rotated = path.resolveSibling(base + extension);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.move(path, rotated);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                rotated = path.resolveSibling(base + "-" + attempt + extension);
+            }
+        }
+        LOG.info("Rotated target file '{}' to '{}'.", path, rotated);
+        open();
+    }
+
+    // Write the rows so far to the file. Rows are not forced to disk, as with the pipe to a SortCL job.
+    public void flush() throws IOException {
+        drain();
+        if (gzip != null) {
+            gzip.flush();
+        }
+        if (isRotationDue() && fileBytes > 0) {
+            rotate();
+        }
+    }
+
+    private void closeFile() throws IOException {
+        drain();
+        if (gzip != null) {
+            gzip.close(); // Also closes the channel.
+        } else {
+            channel.close();
+        }
+    }
+
+    public void close() throws IOException {
+        closeFile();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Settings of the file sinks, read from the configuration. Null when file sinks are disabled.
+    static class Settings {
+        static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+        final int bufferSize;
+        final long rotateBytes; // Rotate the file once this many bytes have been written to it; 0 to disable.
+        final long rotateMillis; // Rotate the file once it has been open this long; 0 to disable.
+        final boolean gzip;
+
+        Settings(int bufferSize, long rotateBytes, long rotateMillis, boolean gzip) {
+            this.bufferSize = bufferSize;
+            this.rotateBytes = rotateBytes;
+            this.rotateMillis = rotateMillis;
+            this.gzip = gzip;
+        }
+
+        static Settings fromProperties(Properties props) {
+            if (!Boolean.parseBoolean(props.getProperty(Main.FILE_SINK_PROPERTY_NAME))) {
+                return null;
+            }
+            long bufferSize = parseLimit(props, Main.FILE_SINK_BUFFER_SIZE_PROPERTY_NAME);
+            return new Settings(bufferSize == 0 ? DEFAULT_BUFFER_SIZE : (int) Math.min(Math.max(bufferSize, 4096), Integer.MAX_VALUE - 8),
+                    parseLimit(props, Main.FILE_SINK_ROTATE_BYTES_PROPERTY_NAME), parseLimit(props, Main.FILE_SINK_ROTATE_MS_PROPERTY_NAME),
+                    Boolean.parseBoolean(props.getProperty(Main.FILE_SINK_GZIP_PROPERTY_NAME)));
+        }
+
+        private static long parseLimit(Properties props, String propertyName) {
+            String value = props.getProperty(propertyName);
+            if (value == null || value.trim().isEmpty()) {
+                return 0;
+            }
+            try {
+                return Math.max(0, Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value '{}' for property {}. The default will be used.", value, propertyName);
+                return 0;
+            }
+        }
+    }
+}
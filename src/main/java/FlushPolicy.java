@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Decides when the stdin of a SortCL job is flushed. A job is flushed once it holds a number of unflushed rows or bytes,
+ * and, when a maximum latency is set, a background flusher sends rows that have waited that long even if the table is quiet.
+ * With no maximum latency, jobs are also flushed at the end of every batch. Rows are always flushed one at a time when not batching.
+ * After each round, the background flusher lets the batch consumers mark the change events it flushed as processed.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class FlushPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(FlushPolicy.class);
+
+    private final long maxRows; // Flush after this many unflushed rows; 0 to disable.
+    private final long maxBytes; // Flush after this many unflushed bytes; 0 to disable.
+    private final long maxLatencyMillis; // Flush rows that have been waiting this long; 0 to flush at the end of every batch instead.
+    private final List<Runnable> flushListeners = new CopyOnWriteArrayList<>(); // Run by the background flusher after each round.
+
+    FlushPolicy(long maxRows, long maxBytes, long maxLatencyMillis) {
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    static FlushPolicy fromProperties(Properties props) {
+        return new FlushPolicy(parseLimit(props, Main.STDIN_FLUSH_ROWS_PROPERTY_NAME), parseLimit(props, Main.STDIN_FLUSH_BYTES_PROPERTY_NAME), parseLimit(props, Main.STDIN_FLUSH_LATENCY_PROPERTY_NAME));
+    }
+
+    private static long parseLimit(Properties props, String propertyName) {
+        String value = props.getProperty(propertyName);
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for property {}. The limit will not be applied.", value, propertyName);
+            return 0;
+        }
+    }
+
+    // True when the rows written so far should be sent to SortCL without waiting for the end of the batch.
+    public boolean isFlushDue(long pendingRows, long pendingBytes) {
+        return (maxRows > 0 && pendingRows >= maxRows) || (maxBytes > 0 && pendingBytes >= maxBytes);
+    }
+
+    // True when the oldest unflushed row has waited for the maximum latency.
+    public boolean isFlushOverdue(long oldestPendingNanos, long nowNanos) {
+        return maxLatencyMillis > 0 && nowNanos - oldestPendingNanos >= TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+    }
+
+    // When a maximum latency is set, the background flusher is responsible for flushing instead of the end of each batch. Batches are
+    // then only marked as processed once their rows have been flushed.
+    public boolean defersFlush() {
+        return maxLatencyMillis > 0;
+    }
+
+    // Run the listener on the background flusher after each round, even when nothing was flushed.
+    public void addFlushListener(Runnable listener) {
+        flushListeners.add(listener);
+    }
+
+    // Start the background flusher which keeps quiet tables within the maximum latency. Returns null when no latency is set.
+    public ScheduledExecutorService startBackgroundFlusher(Main m) {
+        if (!defersFlush()) {
+            return null;
+        }
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sortcl-stdin-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, maxLatencyMillis / 2);
+        flusher.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (SclScript script : Main.scripts.get().values()) {
+                if (script.isFlushOverdue(this, now)) {
+                    Main.flushSortCLScript(script.getKey(), m);
+                }
+            }
+            for (Runnable listener : flushListeners) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) { // Would otherwise stop the flusher.
+                    LOG.warn("Could not mark flushed change events as processed: {}", e.getMessage());
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        return flusher;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+}
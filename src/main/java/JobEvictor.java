@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Ends SortCL jobs that are no longer needed, so that a database with thousands of tables does not keep a process and its
+ * pipes open for every table, operation and set of columns ever seen. Jobs that have had no rows for the idle timeout are ended, and
+ * when there are more live jobs than allowed, the least recently used are ended. An ended job is flushed, its stdin closed and its
+ * process waited for, on the evictor thread; a new job is started if rows for it arrive again. Jobs are kept in the order they were
+ * started and, when one is to be ended, those used since they were queued are moved to the back, so writing a row does not have to
+ * reorder anything and finding the least recently used job does not scan every job.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class JobEvictor {
+    private static final Logger LOG = LoggerFactory.getLogger(JobEvictor.class);
+
+    private final int maxLiveJobs; // End the least recently used jobs beyond this many; 0 for no limit.
+    private final long idleTimeoutMillis; // End jobs that have had no rows for this long; 0 to keep idle jobs.
+    private ScheduledExecutorService evictor; // Null until started, and when there is neither a limit nor an idle timeout.
+    private Main m;
+    private final Queue<QueuedJob> jobs = new ArrayDeque<>(); // Live jobs, roughly least recently used first, when there is a limit.
+    private int retiring; // Jobs handed to the evictor thread to end that it has not ended yet.
+
+    JobEvictor(int maxLiveJobs, long idleTimeoutMillis) {
+        this.maxLiveJobs = maxLiveJobs;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    static JobEvictor fromProperties(Properties props) {
+        return new JobEvictor((int) Math.min(parseLimit(props, Main.MAX_LIVE_JOBS_PROPERTY_NAME), Integer.MAX_VALUE), parseLimit(props, Main.JOB_IDLE_TIMEOUT_PROPERTY_NAME));
+    }
+
+    private static long parseLimit(Properties props, String propertyName) {
+        String value = props.getProperty(propertyName);
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for property {}. The limit will not be applied.", value, propertyName);
+            return 0;
+        }
+    }
+
+    // Start the evictor thread, which ends jobs on behalf of the threads writing to them. Does nothing when there is neither a limit nor
+    // an idle timeout.
+    void start(Main m) {
+        this.m = m;
+        if (maxLiveJobs == 0 && idleTimeoutMillis == 0) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sortcl-job-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (idleTimeoutMillis > 0) {
+            long period = Math.max(1, idleTimeoutMillis / 2);
+            evictor.scheduleWithFixedDelay(this::evictIdleJobs, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Called by the thread that started a job. While there are more live jobs than allowed, the least recently used are handed to the
+    // evictor thread to end, so the thread starting the job goes on without waiting for their processes to exit. Only when the evictor
+    // falls behind by more jobs than the limit does it wait, so there are never more than about twice as many live jobs as allowed.
+    void jobStarted(SclScript script) {
+        if (maxLiveJobs == 0 || evictor == null) {
+            return;
+        }
+        synchronized (jobs) {
+            jobs.add(new QueuedJob(script));
+            if (jobs.size() > 2 * Math.max(maxLiveJobs, Main.scripts.get().size())) { // Drop the jobs ended since, such as idle ones.
+                jobs.removeIf(job -> !isLive(job.script));
+            }
+            while (Main.scripts.get().size() - retiring > maxLiveJobs) {
+                SclScript leastRecentlyUsed = takeLeastRecentlyUsed();
+                if (leastRecentlyUsed == null) { // Every job is in use, or still being started; the next job started tries again.
+                    break;
+                }
+                retiring++;
+                evictor.execute(() -> {
+                    try {
+                        if (isLive(leastRecentlyUsed)) { // Not ended meanwhile, for being idle.
+                            LOG.info("Ending the SortCL job for table '{}', as there are more than {} live jobs.", leastRecentlyUsed.getSourceTableIdentifier(), maxLiveJobs);
+                            Main.retireSortCLScript(leastRecentlyUsed, m);
+                        }
+                    } finally {
+                        synchronized (jobs) {
+                            retiring--;
+                            jobs.notifyAll();
+                        }
+                    }
+                });
+            }
+            try {
+                while (retiring > maxLiveJobs) {
+                    jobs.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Take the live job nearest the front of the queue that has not been used since it was queued. Jobs used since then are queued again
+    // at the back, as of their last use, so each is passed over at most twice.
+    private SclScript takeLeastRecentlyUsed() {
+        for (int remaining = 2 * jobs.size(); remaining > 0 && !jobs.isEmpty(); remaining--) {
+            QueuedJob job = jobs.poll();
+            if (!isLive(job.script)) {
+                continue;
+            }
+            long lastUsedNanos = job.script.getLastUsedNanos();
+            if (lastUsedNanos != 0 && lastUsedNanos == job.lastUsedNanos) {
+                return job.script;
+            }
+            jobs.add(new QueuedJob(job.script)); // Used since it was queued, or still being started.
+        }
+        return null;
+    }
+
+    private static boolean isLive(SclScript script) {
+        return Main.scripts.get().get(script.getKey()) == script;
+    }
+
+    private void evictIdleJobs() {
+        long now = System.nanoTime();
+        for (SclScript script : Main.scripts.get().values()) {
+            if (script.getLastUsedNanos() != 0 && now - script.getLastUsedNanos() >= TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+                LOG.info("Ending the SortCL job for table '{}', which has had no rows for {} ms.", script.getSourceTableIdentifier(), idleTimeoutMillis);
+                Main.retireSortCLScript(script, m);
+            }
+        }
+    }
+
+    // A live job, and when it had last been used as it was queued.
+    private static final class QueuedJob {
+        final SclScript script;
+        final long lastUsedNanos;
+
+        QueuedJob(SclScript script) {
+            this.script = script;
+            this.lastUsedNanos = script.getLastUsedNanos();
+        }
+    }
+
+    public int getMaxLiveJobs() {
+        return maxLiveJobs;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+}
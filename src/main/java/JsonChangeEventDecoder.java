@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Decode change events delivered by the Debezium embedded engine as JSON strings, with schemas enabled.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.debezium.engine.ChangeEvent;
+
+import java.util.Map;
+
+public class JsonChangeEventDecoder implements ChangeEventDecoder<ChangeEvent<String, String>> {
+    private final Main m;
+    private final String schemaFieldName;
+
+    JsonChangeEventDecoder(Main m) {
+        this.m = m;
+        this.schemaFieldName = Main.getSchemaFieldName(m);
+    }
+
+    @Override
+    public ChangeRow decode(ChangeEvent<String, String> record) {
+        if (record.value() == null) {
+            return null;
+        }
+        JsonObject jsonObject = JsonParser.parseString(record.value()).getAsJsonObject();
+        JsonObject payload = jsonObject.get("payload") != null && jsonObject.get("payload").isJsonObject() ? jsonObject.get("payload").getAsJsonObject() : null;
+        String operation = ChangeRow.STRUCTURE_CHANGE_OPERATION;
+        if (payload != null && payload.get("op") != null) {
+            operation = payload.get("op").getAsString();
+        }
+        JsonObject source = payload != null && payload.get("source") != null && payload.get("source").isJsonObject() ? payload.get("source").getAsJsonObject() : null;
+        ChangeRow row = new ChangeRow(operation, stringOf(source, schemaFieldName), stringOf(source, "table"));
+        if (source != null && source.get("ts_ms") != null && source.get("ts_ms").isJsonPrimitive()) {
+            row.setSourceTimestamp(source.get("ts_ms").getAsLong());
+        }
+        if (payload != null && payload.get("ts_ms") != null && payload.get("ts_ms").isJsonPrimitive()) {
+            row.setEventTimestamp(payload.get("ts_ms").getAsLong());
+        }
+        if (row.isStructureChange()) {
+            row.setDdl(stringOf(payload, "ddl"));
+            return row;
+        }
+        if (!Main.isReplicated(m, operation)) {
+            return row;
+        }
+        JsonObject image = payload.get(operation.equals("d") ? "before" : "after").getAsJsonObject();
+        row.setSchemaPlan(m.getSchemaPlanCache().get(row.getSourceTableIdentifier(), SchemaPlanCache.fingerprint(record.value()), jsonObject, record.key()));
+        Object[] values = new Object[image.size()];
+        int index = 0;
+        for (Map.Entry<String, JsonElement> column : image.entrySet()) {
+            values[index++] = column.getValue();
+        }
+        row.setValues(values);
+        return row;
+    }
+
+    private static String stringOf(JsonObject object, String name) {
+        if (object == null || object.get(name) == null || !object.get(name).isJsonPrimitive()) {
+            return null;
+        }
+        return object.get(name).getAsString();
+    }
+}
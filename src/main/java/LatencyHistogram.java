@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: A log-linear histogram of latencies in nanoseconds, in the manner of HdrHistogram. Each power of two is split into 32
+ * buckets, so a percentile is reported within about 3% of the latency recorded, from 1 ns up to a little over two hours; longer
+ * latencies are counted as the maximum. Histograms kept for every table split each power of two into fewer buckets, to save memory.
+ * Recording a latency only increments a counter in a fixed array, without allocating or locking, so it can be done from any thread on
+ * the hot path.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram implements LatencyHistogramMBean {
+    static final int SUB_BUCKET_BITS = 5; // 32 buckets per power of two, 1,248 in all.
+    private static final int MAX_EXPONENT = 43; // Latencies up to 2^43 ns, about 2.4 hours.
+    static final long HIGHEST_LATENCY = (1L << MAX_EXPONENT) - 1;
+
+    private final String name;
+    private final String description;
+    private final int subBucketBits;
+    private final int subBuckets;
+    private final AtomicLongArray counts;
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    LatencyHistogram(String name, String description) {
+        this(name, description, SUB_BUCKET_BITS);
+    }
+
+    // Each power of two split into 2^subBucketBits buckets, so a percentile is within 1 / 2^subBucketBits of the latency.
+    LatencyHistogram(String name, String description, int subBucketBits) {
+        this.name = name;
+        this.description = description;
+        this.subBucketBits = subBucketBits;
+        this.subBuckets = 1 << subBucketBits;
+        this.counts = new AtomicLongArray((MAX_EXPONENT - subBucketBits + 1) * subBuckets);
+    }
+
+    // Record the time since the given System.nanoTime().
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    void record(long nanos) {
+        long latency = Math.min(Math.max(nanos, 0), HIGHEST_LATENCY);
+        counts.incrementAndGet(bucketOf(latency));
+        totalNanos.add(latency);
+        if (latency > maxNanos.get()) {
+            maxNanos.accumulateAndGet(latency, Math::max);
+        }
+    }
+
+    int bucketOf(long latency) {
+        if (latency < subBuckets) {
+            return (int) latency;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(latency);
+        return (exponent - subBucketBits + 1) * subBuckets + (int) ((latency >>> (exponent - subBucketBits)) & (subBuckets - 1));
+    }
+
+    // The highest latency counted in a bucket.
+    long highestInBucket(int bucket) {
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int shift = bucket / subBuckets - 1;
+        long lowest = (long) (subBuckets + bucket % subBuckets) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    // A copy of the counts, to work out the percentiles of the latencies recorded between two copies.
+    long[] snapshot() {
+        long[] snapshot = new long[counts.length()];
+        for (int bucket = 0; bucket < snapshot.length; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+        }
+        return snapshot;
+    }
+
+    // The latency at or below which the given fraction of the latencies in a copy of the counts fall, or 0 if none were counted.
+    long percentile(long[] counts, long total, double fraction) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return highestInBucket(bucket);
+            }
+        }
+        return HIGHEST_LATENCY;
+    }
+
+    // Percentile of everything recorded so far, read without copying the counts.
+    public long getPercentileNanos(double fraction) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(bucket), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public long getCount() {
+        long total = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            total += counts.get(bucket);
+        }
+        return total;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : totalNanos.sum() / 1e3 / count;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return getPercentileNanos(0.5) / 1e3;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return getPercentileNanos(0.9) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return getPercentileNanos(0.99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return getPercentileNanos(0.999) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Binary snapshot of the rules and data class libraries as resolved at startup: the rules, the data classes bound to them
+ * and the index of every set file. On the next start the snapshot is restored instead of parsing the libraries and indexing the set
+ * files again, provided that the size and modification time of every source file still match, and the content hash of the library
+ * files. Set files can be large and are memory-mapped on use, so they are not read to hash them. Set files are only indexed on first use,
+ * so the snapshot is written again, in the background and at shutdown, once more of them have been indexed.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class LibrarySnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(LibrarySnapshot.class);
+    final static int MAGIC = 0x52435342; // "RCSB"
+    final static int VERSION = 3;
+    private static final long REWRITE_DELAY_MILLIS = 5000; // So that set files indexed one after another are written together.
+    private static volatile Runnable rewrite; // Writes the libraries in use to their snapshot again; null while there is none.
+    private static final AtomicBoolean rewriteScheduled = new AtomicBoolean();
+    private static ScheduledExecutorService rewriter; // Made when a set file is first indexed.
+
+    private final RulesLibrary rulesLibrary;
+    private final DataClassLibrary dataClassLibrary;
+    private final String libraryHash; // Of the source files, as computed by hashSources.
+
+    private LibrarySnapshot(RulesLibrary rulesLibrary, DataClassLibrary dataClassLibrary, String libraryHash) {
+        this.rulesLibrary = rulesLibrary;
+        this.dataClassLibrary = dataClassLibrary;
+        this.libraryHash = libraryHash;
+    }
+
+    // Restore the libraries from a snapshot. Returns null if there is no snapshot, or it was made from other files or settings.
+    static LibrarySnapshot read(String snapshotPath, String rulesLibraryPath, String dataClassLibraryPath) {
+        if (snapshotPath == null || !Files.isRegularFile(Paths.get(snapshotPath))) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotPath)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || input.readBoolean() != SetIndex.bloomFilterEnabled) {
+                return null;
+            }
+            if (!String.valueOf(rulesLibraryPath).equals(input.readUTF()) || !String.valueOf(dataClassLibraryPath).equals(input.readUTF())) {
+                return null;
+            }
+            int sourceCount = input.readInt();
+            List<Source> sources = new ArrayList<>(sourceCount);
+            for (int index = 0; index < sourceCount; index++) {
+                Source source = new Source(readNullableUTF(input), input.readLong(), input.readLong(), input.readUTF());
+                if (!source.isUnchanged()) {
+                    LOG.info("'{}' has changed since the library snapshot was written.", source.path);
+                    return null;
+                }
+                sources.add(source);
+            }
+            Map<String, Rule> rules = new HashMap<>();
+            int ruleCount = input.readInt();
+            for (int rule = 0; rule < ruleCount; rule++) {
+                rules.put(input.readUTF(), new Rule(readNullableUTF(input), readNullableUTF(input)));
+            }
+            DataClassLibrary dataClassLibrary = new DataClassLibrary();
+            int definitionCount = input.readInt();
+            for (int definition = 0; definition < definitionCount; definition++) {
+                String name = input.readUTF();
+                Rule rule = new Rule(readNullableUTF(input), readNullableUTF(input));
+                dataClassLibrary.addDataClass(new DataClassLibrary.Definition(name, rule, input.readUTF(), input.readBoolean(), readNullableUTF(input)));
+            }
+            int setCount = input.readInt();
+            for (int set = 0; set < setCount; set++) {
+                SetIndex.read(Paths.get(input.readUTF()), input);
+            }
+            dataClassLibrary.compileIndex();
+            LOG.info("Restored {} rules and {} data class matchers from library snapshot '{}'.", rules.size(), definitionCount, snapshotPath);
+            RulesLibrary rulesLibrary = new RulesLibrary(rules);
+            rewrite = () -> write(snapshotPath, rulesLibraryPath, dataClassLibraryPath, rulesLibrary, dataClassLibrary, sources);
+            return new LibrarySnapshot(rulesLibrary, dataClassLibrary, hashSources(sources));
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not read library snapshot '{}'. The libraries will be parsed instead.", snapshotPath);
+            return null;
+        }
+    }
+
+    // The files the libraries were parsed from, as they are now.
+    static List<Source> sourcesOf(String rulesLibraryPath, String dataClassLibraryPath, List<String> setPaths) {
+        List<Source> sources = new ArrayList<>();
+        sources.add(Source.of(rulesLibraryPath, false));
+        sources.add(Source.of(dataClassLibraryPath, false));
+        for (String setPath : setPaths) {
+            sources.add(Source.of(setPath, true));
+        }
+        return sources;
+    }
+
+    // Hash of the source files that the classification of columns depends on.
+    static String hashSources(List<Source> sources) {
+        MessageDigest digest = newDigest();
+        for (Source source : sources) {
+            if (source.path == null) {
+                continue;
+            }
+            digest.update(source.path.getBytes(StandardCharsets.UTF_8));
+            digest.update((source.hash.isEmpty() ? source.size + "/" + source.modified : source.hash).getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(digest.digest());
+    }
+
+    // Write a snapshot of freshly parsed libraries. Only set files that have already been indexed are included; the snapshot is written
+    // again as the others are indexed.
+    static synchronized void write(String snapshotPath, String rulesLibraryPath, String dataClassLibraryPath, RulesLibrary rulesLibrary, DataClassLibrary dataClassLibrary,
+                      List<Source> sources) {
+        if (snapshotPath == null) {
+            return;
+        }
+        rewrite = () -> write(snapshotPath, rulesLibraryPath, dataClassLibraryPath, rulesLibrary, dataClassLibrary, sources);
+        Path target = Paths.get(snapshotPath).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary.toFile())))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeBoolean(SetIndex.bloomFilterEnabled);
+            output.writeUTF(String.valueOf(rulesLibraryPath));
+            output.writeUTF(String.valueOf(dataClassLibraryPath));
+            output.writeInt(sources.size());
+            for (Source source : sources) {
+                writeNullableUTF(output, source.path);
+                output.writeLong(source.size);
+                output.writeLong(source.modified);
+                output.writeUTF(source.hash);
+            }
+            output.writeInt(rulesLibrary.getRules().size());
+            for (Map.Entry<String, Rule> rule : rulesLibrary.getRules().entrySet()) {
+                output.writeUTF(rule.getKey());
+                writeNullableUTF(output, rule.getValue().getType());
+                writeNullableUTF(output, rule.getValue().getRule());
+            }
+            output.writeInt(dataClassLibrary.getDefinitions().size());
+            for (DataClassLibrary.Definition definition : dataClassLibrary.getDefinitions()) {
+                output.writeUTF(definition.name);
+                writeNullableUTF(output, definition.rule.getType());
+                writeNullableUTF(output, definition.rule.getRule());
+                output.writeUTF(definition.nameMatcher);
+                output.writeBoolean(definition.setFile);
+                writeNullableUTF(output, definition.details);
+            }
+            List<Path> setFiles = new ArrayList<>();
+            for (DataClassLibrary.Definition definition : dataClassLibrary.getDefinitions()) {
+                if (definition.setFile && sizeOf(definition.details) >= 0 && !setFiles.contains(Paths.get(definition.details))
+                        && SetIndex.forPath(Paths.get(definition.details)).isIndexed()) {
+                    setFiles.add(Paths.get(definition.details));
+                }
+            }
+            output.writeInt(setFiles.size());
+            for (Path setFile : setFiles) {
+                output.writeUTF(setFile.toString());
+                SetIndex.forPath(setFile).write(output);
+            }
+        } catch (IOException | InvalidPathException e) {
+            LOG.warn("Could not write library snapshot '{}'.", snapshotPath);
+            return;
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Wrote library snapshot '{}'.", snapshotPath);
+        } catch (IOException e) {
+            LOG.warn("Could not replace library snapshot '{}'.", snapshotPath);
+        }
+    }
+
+    // Called once a set file has been indexed, to add its index to the snapshot of the libraries in use.
+    static void setFileIndexed() {
+        if (rewrite != null && rewriteScheduled.compareAndSet(false, true)) {
+            rewriter().schedule(LibrarySnapshot::rewrite, REWRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService rewriter() {
+        if (rewriter == null) {
+            rewriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "library-snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return rewriter;
+    }
+
+    // Write the snapshot again if set files have been indexed since it was written. Also called at shutdown, so indexes built shortly
+    // before are not lost.
+    static void rewrite() {
+        Runnable pending = rewrite;
+        if (rewriteScheduled.compareAndSet(true, false) && pending != null) {
+            pending.run();
+        }
+    }
+
+    // Size of a file, or -1 if it does not exist.
+    private static long sizeOf(String path) {
+        try {
+            return path == null ? -1 : Files.size(Paths.get(path));
+        } catch (IOException | InvalidPathException e) {
+            return -1;
+        }
+    }
+
+    private static long modifiedTimeOf(String path) {
+        try {
+            return path == null ? -1 : Files.getLastModifiedTime(Paths.get(path)).toMillis();
+        } catch (IOException | InvalidPathException e) {
+            return -1;
+        }
+    }
+
+    // SHA-256 of the content of a file, read in chunks. A file that cannot be read hashes as empty.
+    private static String hashOf(String path) {
+        MessageDigest digest = newDigest();
+        if (path != null) {
+            try (InputStream input = Files.newInputStream(Paths.get(path))) {
+                byte[] chunk = new byte[8192];
+                for (int count = input.read(chunk); count >= 0; count = input.read(chunk)) {
+                    digest.update(chunk, 0, count);
+                }
+            } catch (IOException | InvalidPathException e) {
+                LOG.debug("Could not read '{}' to hash it.", path);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { // Every Java platform provides SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void writeNullableUTF(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    public RulesLibrary getRulesLibrary() {
+        return rulesLibrary;
+    }
+
+    public DataClassLibrary getDataClassLibrary() {
+        return dataClassLibrary;
+    }
+
+    public String getLibraryHash() {
+        return libraryHash;
+    }
+
+    // A file the libraries were resolved from. The size and time are compared first, so an unchanged library file is only read to
+    // confirm its hash; a set file is not hashed at all.
+    static class Source {
+        final String path;
+        final long size; // -1 if the file does not exist.
+        final long modified;
+        final String hash; // Of the content of a library file, or empty for a set file.
+
+        Source(String path, long size, long modified, String hash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        static Source of(String path, boolean setFile) {
+            return new Source(path, sizeOf(path), modifiedTimeOf(path), setFile ? "" : hashOf(path));
+        }
+
+        boolean isUnchanged() {
+            return sizeOf(path) == size && modifiedTimeOf(path) == modified && (hash.isEmpty() || hashOf(path).equals(hash));
+        }
+    }
+}
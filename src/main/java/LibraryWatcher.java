@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Watches the rules and data class libraries, and loads them again when they change while Ripcurrent is running. New jobs
+ * are classified with the new libraries as soon as they are loaded. Running jobs whose columns would now be classified differently
+ * are replaced when their next row arrives; all other jobs keep running.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class LibraryWatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(LibraryWatcher.class);
+    static final long SETTLE_MILLIS = 1000; // Wait for the files to stop changing, as editors may save a file in several writes.
+
+    // Start watching the libraries. Returns null if no library is configured or the file system cannot be watched.
+    static Thread start(Main m) {
+        Set<Path> libraries = new HashSet<>();
+        for (String propertyName : new String[]{Main.RULES_LIBRARY_PROPERTY_NAME, Main.DATA_CLASS_LIBRARY_PROPERTY_NAME}) {
+            String library = m.getProps().getProperty(propertyName);
+            if (library != null) {
+                try {
+                    libraries.add(Paths.get(library).toAbsolutePath().normalize());
+                } catch (InvalidPathException e) {
+                    LOG.debug("Cannot watch '{}'.", library);
+                }
+            }
+        }
+        if (libraries.isEmpty()) {
+            return null;
+        }
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Set<Path> directories = new HashSet<>();
+            for (Path library : libraries) {
+                if (directories.add(library.getParent())) {
+                    library.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not watch the rules and data class libraries for changes: {}", e.getMessage());
+            return null;
+        }
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    if (!isLibraryChanged(watchService.take(), libraries)) {
+                        continue;
+                    }
+                    WatchKey key;
+                    while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        isLibraryChanged(key, libraries);
+                    }
+                    reload(m);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "library-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return watcher;
+    }
+
+    private static boolean isLibraryChanged(WatchKey key, Set<Path> libraries) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || libraries.contains(((Path) key.watchable()).resolve((Path) event.context()))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    // Load the libraries again and mark the jobs whose classification has changed, so they are replaced.
+    static void reload(Main m) {
+        LOG.info("The rules or data class library has changed. Loading the libraries again...");
+        try {
+            if (!Main.loadLibraries(m, true)) {
+                LOG.warn("Could not parse the changed libraries; the previous libraries remain in use.");
+                return;
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not load the changed libraries; the previous libraries remain in use.", e);
+            return;
+        }
+        int changed = 0;
+        for (SclScript script : Main.scripts.get().values()) {
+            if (m.getClassificationCache().isClassificationChanged(script)) {
+                script.markStale();
+                changed++;
+                LOG.info("The classification of table '{}' has changed. Its SortCL job will be replaced.", script.getSourceTableIdentifier());
+            }
+        }
+        LOG.info("Libraries loaded again; {} of {} SortCL jobs will be replaced.", changed, Main.scripts.get().size());
+    }
+}
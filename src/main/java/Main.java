@@ -9,8 +9,7 @@
  *     devonk
  */
 
-import com.google.gson.*;
-import io.debezium.engine.ChangeEvent;
+import io.debezium.embedded.Connect;
 import io.debezium.engine.DebeziumEngine;
 import io.debezium.engine.format.Json;
 import org.apache.log4j.LogManager;
@@ -23,6 +22,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -30,34 +30,76 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
 
 public class Main {
+    final static String APPLY_QUEUE_SIZE_PROPERTY_NAME = "applyQueueSize";
+    final static String APPLY_THREADS_PROPERTY_NAME = "applyThreads";
+    final static String CLASSIFICATION_CACHE_PROPERTY_NAME = "classificationCachePath";
+    final static String CHANGE_EVENT_CONSUMER_PROPERTY_NAME = "changeEventConsumer";
+    final static String CHANGE_EVENT_CONSUMER_RECORD = "record"; // Handle change events one at a time, flushing after every row, instead of in batches.
+    final static String COALESCE_WINDOW_MS_PROPERTY_NAME = "coalesceWindowMs";
+    final static String COALESCE_WINDOW_ROWS_PROPERTY_NAME = "coalesceWindowRows";
     final static String DATA_CLASS_LIBRARY_PROPERTY_NAME = "dataClassLibraryPath";
     final static String DATA_TARGET_PROCESS_TYPE_PROPERTY_NAME = "dataTargetProcessType";
     final static String DATA_TARGET_PROPERTY_NAME = "dataTarget";
     final static String DATA_TARGET_SCHEMA_PROPERTY_NAME = "dataTargetSchema";
     final static String DATA_TARGET_SEPARATOR_PROPERTY_NAME = "dataTargetSeparator";
+    final static String ENGINE_FORMAT_CONNECT = "connect"; // Consume Kafka Connect records directly instead of serializing them to JSON.
+    final static String ENGINE_FORMAT_PROPERTY_NAME = "engineFormat";
+    final static String FILE_SINK_BUFFER_SIZE_PROPERTY_NAME = "fileSinkBufferSize";
+    final static String FILE_SINK_GZIP_PROPERTY_NAME = "fileSinkGzip";
+    final static String FILE_SINK_PROPERTY_NAME = "fileSink";
+    final static String FILE_SINK_ROTATE_BYTES_PROPERTY_NAME = "fileSinkRotateBytes";
+    final static String FILE_SINK_ROTATE_MS_PROPERTY_NAME = "fileSinkRotateMs";
+    final static String JOB_IDLE_TIMEOUT_PROPERTY_NAME = "jobIdleTimeoutMs";
+    final static String LATENCY_LOG_INTERVAL_PROPERTY_NAME = "latencyLogIntervalMs";
+    final static String LIBRARY_SNAPSHOT_PROPERTY_NAME = "librarySnapshotPath";
+    final static String MAX_LIVE_JOBS_PROPERTY_NAME = "maxLiveJobs";
+    final static String METRICS_HTTP_HOST_PROPERTY_NAME = "metricsHttpHost";
+    final static String METRICS_HTTP_PORT_PROPERTY_NAME = "metricsHttpPort";
+    final static String METRICS_JMX_PROPERTY_NAME = "metricsJmx";
+    final static String MERGE_BATCH_MS_PROPERTY_NAME = "mergeBatchMs";
+    final static String MERGE_BATCH_ROWS_PROPERTY_NAME = "mergeBatchRows";
+    final static String MERGE_JDBC_PASSWORD_PROPERTY_NAME = "mergeJdbcPassword";
+    final static String MERGE_JDBC_URL_PROPERTY_NAME = "mergeJdbcUrl";
+    final static String MERGE_JDBC_USER_PROPERTY_NAME = "mergeJdbcUser";
+    final static String MERGE_STAGING_SUFFIX_PROPERTY_NAME = "mergeStagingSuffix";
+    final static String MERGE_TABLES_PROPERTY_NAME = "mergeTables";
+    final static String REPLAY_BATCH_SIZE_PROPERTY_NAME = "replayBatchSize";
+    final static String REPLAY_FILE_PROPERTY_NAME = "replayFile";
+    final static String REPLAY_REPORT_PROPERTY_NAME = "replayReport";
     final static String RULES_LIBRARY_PROPERTY_NAME = "rulesLibraryPath";
+    final static String SET_BLOOM_FILTER_PROPERTY_NAME = "setBloomFilter";
+    final static String SORTCL_EXECUTABLE_PROPERTY_NAME = "sortclExecutable";
+    final static String SORTCL_SPAWN_THREADS_PROPERTY_NAME = "sortclSpawnThreads";
+    final static String STDIN_FLUSH_BYTES_PROPERTY_NAME = "stdinFlushBytes";
+    final static String STDIN_FLUSH_LATENCY_PROPERTY_NAME = "stdinFlushLatencyMs";
+    final static String STDIN_FLUSH_ROWS_PROPERTY_NAME = "stdinFlushRows";
     final static String STRUCTURE_CHANGE_LOG_PROPERTY_NAME = "schemaChangeEventLog";
     final static String TARGET_NAME_POSTFIX_PROPERTY_NAME = "targetNamePostfix";
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
 
-    static AtomicReference<ConcurrentHashMap<String, SclScript>> scripts = new AtomicReference<>(); // Holds references to current SortCL jobs.
+    static AtomicReference<ConcurrentHashMap<ScriptKey, SclScript>> scripts = new AtomicReference<>(); // Holds references to current SortCL jobs, keyed by operation, source table and columns.
 
-    JsonObject afterJsonPayload;
-    ArrayList<String> columns = new ArrayList<>(); // A list of column names for the specific source table.
+    ApplyPipeline applyPipeline; // Worker threads that apply rows to the SortCL jobs, or null to apply them on the engine thread.
+    volatile ClassificationCache classificationCache; // Data class decisions already made for the columns of each source table.
     DataClassLibrary dataClassLibrary; // Ripcurrent will attempt to parse an existing IRI data class library when its path is specified as a Java property to the application.
     String dataTargetProcessType; // Process type for the data target.
     String dataTargetSchema; // Schema for the data target (if using ODBC).
     String dataTargetSeparator; // Separator to place in the SortCL script for the data target.
-    JsonArray fieldsArray;
     FileOutputStream fileOutputStream;
-    AtomicReference<Integer> i = new AtomicReference<>(); // A key to identify a specific SortCL job in the map of jobs.
-    JsonObject jsonObject; // The Debezium change event is in JSON.
+    String librarySnapshotPath; // Binary snapshot of the resolved libraries.
+    FlushPolicy flushPolicy; // When to flush the stdin of the SortCL jobs.
+    FileTargetSink.Settings fileSinkSettings; // Null unless jobs without rules write their target files themselves.
+    ScriptSpawner scriptSpawner; // Starts the sortcl process of each new job.
+    JobEvictor jobEvictor = new JobEvictor(0, 0); // Ends idle jobs and jobs beyond the live job limit.
+    RowCoalescer rowCoalescer; // Null unless updates and deletes are coalesced before they are written.
+    StagingMerge stagingMerge; // Null unless the changes to some tables are merged from staging tables.
+    ReplicationMetrics metrics = new ReplicationMetrics(); // Published once started.
     String postfixTableName; // Target postfix string.
     Properties props; // Java configuration properties.
     RulesLibrary rulesLibrary; // Ripcurrent will attempt to parse an existing IRI rules library when its path is specified as a Java property to the application.
+    SchemaPlanCache schemaPlanCache = new SchemaPlanCache(); // Compiled schema plans, per source table.
     String structureChangeEventLogPath;
     String DSN;
 
@@ -68,14 +110,15 @@ public class Main {
         PropertyConfigurator.configure(properties);
     }
 
-    private static String getSchema(Main m, JsonObject source) {
+    // Name of the field of the change event source block that holds the schema of the source table.
+    static String getSchemaFieldName(Main m) {
         switch (m.getProps().getProperty("connector.class")) {
             case "io.debezium.connector.mysql.MySqlConnector":
-                return source.get("db").getAsString();
+                return "db";
             case "io.debezium.connector.vitess.VitessConnector":
-                return source.get("keyspace").getAsString();
+                return "keyspace";
             default:
-                return source.get("schema").getAsString();
+                return "schema";
         }
     }
 
@@ -142,12 +185,11 @@ public class Main {
         // Set a few default properties - SortCL is expecting string representations of values.
         props.setProperty("decimal.handling.mode", "string");
         props.setProperty("binary.handling.mode", "base64");
-        RulesLibrary rulesLibrary = new RulesLibrary(props.getProperty(RULES_LIBRARY_PROPERTY_NAME));
-        DataClassLibrary dataClassLibrary = new DataClassLibrary(props.getProperty(DATA_CLASS_LIBRARY_PROPERTY_NAME), rulesLibrary.getRules());
-        m.setDataClassLibrary(dataClassLibrary);
-        m.setRulesLibrary(rulesLibrary);
+        SetIndex.bloomFilterEnabled = Boolean.parseBoolean(props.getProperty(SET_BLOOM_FILTER_PROPERTY_NAME));
+        m.setLibrarySnapshotPath(props.getProperty(LIBRARY_SNAPSHOT_PROPERTY_NAME, Paths.get(ripcurrentHome, "conf", "library.snapshot").toString()));
+        props.setProperty(CLASSIFICATION_CACHE_PROPERTY_NAME, props.getProperty(CLASSIFICATION_CACHE_PROPERTY_NAME, Paths.get(ripcurrentHome, "conf", "classification_cache.properties").toString()));
         m.setProps(props);
-        m.getI().set(0);
+        loadLibraries(m, false);
         String dataTargetProcessTypePropertyValue = m.getProps().getProperty(DATA_TARGET_PROCESS_TYPE_PROPERTY_NAME);
         if (dataTargetProcessTypePropertyValue == null) {
             m.setDataTargetProcessType("ODBC");
@@ -155,176 +197,44 @@ public class Main {
             m.setDataTargetProcessType(dataTargetProcessTypePropertyValue);
         }
         m.setDSN(m.getProps().getProperty("DSN"));
+        m.setFlushPolicy(FlushPolicy.fromProperties(props));
+        m.setFileSinkSettings(FileTargetSink.Settings.fromProperties(props));
+        m.setScriptSpawner(ScriptSpawner.fromProperties(props));
         scripts.set(new ConcurrentHashMap<>());
-        try (DebeziumEngine<ChangeEvent<String, String>> engine = DebeziumEngine.create(Json.class)
-                .using(props)
-                .notifying(record -> {
-                    if (record.value() != null) {
-                        String scriptsKey = null;
-                        try {
-                            JsonObject jsonObject = JsonParser.parseString(record.value()).getAsJsonObject();
-                            m.setJsonObject(jsonObject);
-                            String operation = "";
-                            if (jsonObject != null && jsonObject.get("payload") != null && jsonObject.get("payload").getAsJsonObject() != null && jsonObject.get("payload").getAsJsonObject().get("op") != null) {
-                                operation = jsonObject.get("payload").getAsJsonObject().get("op").getAsString();
-                            }
-                            if (operation.equals("c") || operation.equals("u") && m.getDSN() != null || (operation.equals("d") && m.getDSN() != null)) { // Rows added or updated
-                                JsonObject Jobject_;
-                                if (operation.equals("d")) {
-                                    Jobject_ = jsonObject.get("payload").getAsJsonObject().get("before").getAsJsonObject();
-                                } else {
-                                    Jobject_ = jsonObject.get("payload").getAsJsonObject().get("after").getAsJsonObject();
-                                }
-                                m.setAfterJsonPayload(Jobject_);
-                                m.getColumns().addAll(Jobject_.keySet());
-                                int count = 0;
-                                boolean makeNewScript = Boolean.FALSE;
-                                String keyField = null;
-                                if (record.key() != null) {
-                                    try {
-                                        keyField = JsonParser.parseString(record.key()).getAsJsonObject().get("Schema").getAsJsonObject().get("fields").getAsJsonArray().get(0).getAsJsonObject().get("field").getAsString();
-                                    } catch (JsonParseException | IllegalStateException | NullPointerException | IndexOutOfBoundsException e) {
-                                        LOG.debug("Cannot parse primary key.");
-                                    }
-                                }
-                                JsonArray fieldsArray = jsonObject.get("schema").getAsJsonObject().get("fields").getAsJsonArray().get(0).getAsJsonObject().get("fields").getAsJsonArray();
-                                m.setFieldsArray(fieldsArray);
-                                int loopTrack = 0;
-                                List<Integer> dateIndices = new ArrayList<>();
-                                List<Integer> dateTimeIndices = new ArrayList<>();
-                                List<Integer> timeIndices = new ArrayList<>();
-                                for (JsonElement object : fieldsArray) {
-                                    String type = object.getAsJsonObject().get("type").getAsString();
-                                    JsonElement name = object.getAsJsonObject().get("name");
-                                    if (type == null) {
-                                        loopTrack++;
-                                        continue;
-                                    }
-                                    switch (type) {
-                                        case "int32":
-                                            if (name != null && name.getAsString().equals("io.debezium.time.Date")) { // This is the name for a date, at least with the MySQL connector. Actual Integers seem to have a null name.
-                                                dateIndices.add(loopTrack);
-                                            }
-                                            break;
-                                        case "int64":
-                                            if (name != null && name.getAsString().equals("io.debezium.time.MicroTime")) { // This is the name for a time, at least with the MySQL connector. Actual Integers seem to have a null name.
-                                                timeIndices.add(loopTrack);
-                                            } else if (name != null && name.getAsString().equals("io.debezium.time.Timestamp")) { // This is the name for a timestamp, at least with the MySQL connector. Actual Integers seem to have a null name.
-                                                dateTimeIndices.add(loopTrack);
-                                            }
-                                            break;
-                                        default:
-
-                                    }
-                                    loopTrack++;
-                                }
-                                loopTrack = 0;
-                                // Dates are coming in through the Debezium connector as numeric values, this is looking for them and converting them to their date representation.
-                                for (Map.Entry<String, JsonElement> jj : Jobject_.entrySet()) {
-                                    if (dateIndices.contains(loopTrack)) {
-                                        jj.setValue(new JsonPrimitive(DateTimeConversionUtil.integerToDate(jj.getValue().getAsInt())));
-                                    } else if (dateTimeIndices.contains(loopTrack)) {
-                                        jj.setValue(new JsonPrimitive(DateTimeConversionUtil.numberToDateTime(jj.getValue().getAsLong())));
-                                    } else if (timeIndices.contains(loopTrack)) {
-                                        jj.setValue(new JsonPrimitive(DateTimeConversionUtil.numberToTime(jj.getValue().getAsLong())));
-                                    }
-                                    loopTrack++;
-                                }
-                                if (scripts.get() != null) {
-                                    scriptsKey = String.valueOf(scripts.get().values().size() - 1);
-                                } else {
-                                    scriptsKey = "0";
-                                }
-                                if (scripts.get() != null && scripts.get().values().size() > 0) {
-                                    for (SclScript script : scripts.get().values()) {
-
-                                        if (!script.getOperation().equals(operation) || !script.getSourceTableIdentifier().equals(getSchema(m, jsonObject.get("payload").getAsJsonObject().get("source").getAsJsonObject()) + "." + jsonObject.get("payload").getAsJsonObject().get("source").getAsJsonObject().get("table").getAsString()) || !script.getFields().stream()
-                                                .map(SclField::getName)
-                                                .collect(Collectors.toList()).equals(m.getColumns())) {
-                                            count++;
-                                            if (count == scripts.get().size()) { // If the table is new, make a new script.
-                                                makeNewScript = true;
-                                                scriptsKey = String.valueOf(count);
-                                            }
-                                        } else {
-                                            scriptsKey = script.getKey();
-                                            break;
-                                        }
-                                    }
-                                } else {
-                                    makeNewScript = true;
-                                    scriptsKey = m.getI().get().toString();
-                                }
-                                if (makeNewScript) {
-                                    makeANewScript(m, operation, keyField);
-                                }
-                                int ct = 0;
-                                for (Map.Entry<String, JsonElement> jj : Jobject_.entrySet()) {
-                                    ct++;
-                                    String val;
-                                    try {
-                                        val = jj.getValue().getAsString();
-                                    } catch (UnsupportedOperationException unsupportedOperationException) {
-                                        val = "";
-                                    }
-                                    LOG.debug(val);
-                                    try {
-                                        scripts.get().get(scriptsKey).getStdin().write(val);
-                                        if (ct < Jobject_.entrySet().size()) {
-                                            scripts.get().get(scriptsKey).getStdin().write("\t");
-                                        }
-                                    } catch (IOException e) {
-                                        LOG.error("Could not write output to target table '{}'. Aborting...", scripts.get().get(scriptsKey).getTargetTableIdentifier());
-                                        terminateSortCLScript(scriptsKey, m);
-                                    }
-                                }
-
-                                try {
-                                    scripts.get().get(scriptsKey).getStdin().newLine();
-                                    scripts.get().get(scriptsKey).getStdin().flush();
-                                } catch (IOException e) { // Pipe is closed. This could happen if there was an error outputting to the target table.
-                                    LOG.error("Could not flush output of replication job associated with table '{}'. Aborting...", scripts.get().get(scriptsKey).getSourceTableIdentifier());
-                                    terminateSortCLScript(scriptsKey, m);
-                                }
-                                if (makeNewScript) {
-                                    m.getI().set(m.getI().get() + 1);
-                                }
-                                m.getColumns().clear();
-                            } else if (operation.equals("")) {
-                                try {
-                                    String database = getSchema(m, jsonObject.get("payload").getAsJsonObject().get("source").getAsJsonObject());
-                                    String table = jsonObject.get("payload").getAsJsonObject().get("source").getAsJsonObject().get("table").getAsString();
-                                    String ddl = jsonObject.get("payload").getAsJsonObject().get("ddl").getAsString().replaceAll("\\R", " ");
-                                    String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new java.util.Date());
-                                    m.getFileOutputStream().write(String.format("%s: Database structure change event '%s' detected for table '%s.%s'.\n", timeStamp, ddl, database, table).getBytes(StandardCharsets.UTF_8));
-                                } catch (Exception e) {
-                                    try {
-                                        String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new java.util.Date());
-                                        m.getFileOutputStream().write(String.format("%s: Database structure change event detected.\n", timeStamp).getBytes(StandardCharsets.UTF_8));
-
-                                    } catch (IOException IoError) {
-                                        String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new java.util.Date());
-                                        System.out.println(String.format("%s: WARNING: Unable to write to database change event log '%s'.", timeStamp, m.getStructureChangeEventLogPath()));
-                                    }
-                                }
-                            }
-                        } catch (NullPointerException npe) {
-                            terminateSortCLScript(scriptsKey, m);
-                        } catch (Exception unexpectedException) {
-                            LOG.error("Unexpected exception encountered: '{}'. Terminating...", unexpectedException.getMessage());
-                            terminateSortCLScript(scriptsKey, m);
-                        }
-                    }
-                })
-                .build()) {
+        m.getFlushPolicy().startBackgroundFlusher(m);
+        OutputDrainer.start();
+        m.setJobEvictor(JobEvictor.fromProperties(props));
+        m.getJobEvictor().start(m);
+        m.setStagingMerge(StagingMerge.fromProperties(m, props));
+        if (m.getStagingMerge() != null) {
+            m.getStagingMerge().start(m);
+        }
+        LibraryWatcher.start(m);
+        m.setApplyPipeline(ApplyPipeline.fromProperties(m, props));
+        m.setRowCoalescer(RowCoalescer.fromProperties(m, props));
+        m.getMetrics().start(m, props);
+        ChangeEventReplay replay = ChangeEventReplay.fromProperties(props);
+        if (replay != null) { // Replay captured change events instead of starting the engine.
+            boolean replayed = replay.run(m);
+            closeSchemaChangeEventLog(m);
+            System.exit(replayed ? 0 : 1);
+        }
+        DebeziumEngine<?> debeziumEngine;
+        if (ENGINE_FORMAT_CONNECT.equalsIgnoreCase(props.getProperty(ENGINE_FORMAT_PROPERTY_NAME))) {
+            debeziumEngine = buildEngine(DebeziumEngine.create(Connect.class), new ConnectChangeEventDecoder(m), m);
+        } else {
+            debeziumEngine = buildEngine(DebeziumEngine.create(Json.class), new JsonChangeEventDecoder(m), m);
+        }
+        try (DebeziumEngine<?> engine = debeziumEngine) {
             ExecutorService executor = Executors.newSingleThreadExecutor();
             executor.execute(engine);
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 LOG.info("Requesting embedded engine to shut down");
                 try {
                     engine.close();
-                    terminateSortCLScript("0", m);
+                    closeSortCLScripts();
                     closeSchemaChangeEventLog(m);
+                    LibrarySnapshot.rewrite(); // Add any set file indexes built since the snapshot was last written.
                     LOG.info("Engine terminated");
                 } catch (IOException e) {
                     LOG.error("Unable to shutdown Debezium engine properly.", e);
@@ -336,6 +246,209 @@ public class Main {
         }
     }
 
+    // Load the rules and data class libraries, from their snapshot when it is current, and switch to them along with a classification
+    // cache made for them. Used at startup and whenever the libraries are changed while running, in which case libraries that cannot
+    // be parsed are not switched to. Returns true if the libraries were switched to.
+    static boolean loadLibraries(Main m, boolean reloading) {
+        String rulesLibraryPathString = m.getProps().getProperty(RULES_LIBRARY_PROPERTY_NAME);
+        String dataClassLibraryPathString = m.getProps().getProperty(DATA_CLASS_LIBRARY_PROPERTY_NAME);
+        LibrarySnapshot librarySnapshot = LibrarySnapshot.read(m.getLibrarySnapshotPath(), rulesLibraryPathString, dataClassLibraryPathString);
+        RulesLibrary rulesLibrary;
+        DataClassLibrary dataClassLibrary;
+        String libraryHash;
+        if (librarySnapshot != null) {
+            rulesLibrary = librarySnapshot.getRulesLibrary();
+            dataClassLibrary = librarySnapshot.getDataClassLibrary();
+            libraryHash = librarySnapshot.getLibraryHash();
+        } else {
+            rulesLibrary = new RulesLibrary(rulesLibraryPathString);
+            dataClassLibrary = new DataClassLibrary(dataClassLibraryPathString, rulesLibrary.getRules());
+            if (reloading && (!rulesLibrary.isParsed() || !dataClassLibrary.isParsed())) {
+                return false;
+            }
+            List<LibrarySnapshot.Source> sources = LibrarySnapshot.sourcesOf(rulesLibraryPathString, dataClassLibraryPathString, dataClassLibrary.getSetPaths());
+            if (rulesLibraryPathString != null || dataClassLibraryPathString != null) {
+                LibrarySnapshot.write(m.getLibrarySnapshotPath(), rulesLibraryPathString, dataClassLibraryPathString, rulesLibrary, dataClassLibrary, sources);
+            }
+            libraryHash = LibrarySnapshot.hashSources(sources);
+        }
+        String classificationCachePath = m.getProps().getProperty(CLASSIFICATION_CACHE_PROPERTY_NAME); // Null keeps the decisions in memory only.
+        m.setRulesLibrary(rulesLibrary);
+        m.setDataClassLibrary(dataClassLibrary);
+        SetIndex.retain(dataClassLibrary.getSetPaths()); // Forget the indexes of set files the new libraries no longer use.
+        m.setClassificationCache(new ClassificationCache(classificationCachePath, libraryHash, dataClassLibrary)); // New jobs are classified with the new libraries from here on.
+        return true;
+    }
+
+    // Build the Debezium embedded engine for a change event format, handing its change events to the decoder for that format.
+    private static <R> DebeziumEngine<R> buildEngine(DebeziumEngine.Builder<R> engineBuilder, ChangeEventDecoder<R> decoder, Main m) {
+        engineBuilder.using(m.getProps());
+        if (CHANGE_EVENT_CONSUMER_RECORD.equalsIgnoreCase(m.getProps().getProperty(CHANGE_EVENT_CONSUMER_PROPERTY_NAME))) {
+            engineBuilder.notifying(record -> consumeChangeEvent(m, record, decoder));
+        } else {
+            engineBuilder.notifying(new BatchChangeConsumer<>(m, decoder));
+        }
+        return engineBuilder.build();
+    }
+
+    // Handle and flush a change event on its own, as delivered to the engine's record consumer. The engine marks the event as
+    // processed as soon as this returns, so the row is flushed even when a maximum flush latency is set.
+    static <R> void consumeChangeEvent(Main m, R record, ChangeEventDecoder<R> decoder) {
+        long startNanos = System.nanoTime();
+        ScriptKey scriptsKey = handleChangeEvent(m, record, decoder);
+        if (scriptsKey != null) {
+            flushSortCLScript(scriptsKey, m);
+        }
+        m.getMetrics().batches.recordSince(startNanos);
+    }
+
+    // Only inserts are replicated to files; updates and deletes are replicated when a DSN is configured.
+    static boolean isReplicated(Main m, String operation) {
+        return operation.equals("c") || operation.equals("u") && m.getDSN() != null || (operation.equals("d") && m.getDSN() != null);
+    }
+
+    // Handle a single change event. The row is written to the stdin of its SortCL job but not flushed; the key of that job is returned
+    // so the caller can decide when to flush. Returns null if the event did not produce a row.
+    public static <R> ScriptKey handleChangeEvent(Main m, R record, ChangeEventDecoder<R> decoder) {
+        ChangeRow row = decodeChangeEvent(m, record, decoder);
+        return row == null ? null : applyChangeRow(m, row);
+    }
+
+    // Decode a single change event into the row to replicate. Structure change events are logged here, so null is returned for them
+    // as well as for events whose operation is not replicated.
+    public static <R> ChangeRow decodeChangeEvent(Main m, R record, ChangeEventDecoder<R> decoder) {
+        ChangeRow row;
+        long startNanos = System.nanoTime();
+        try {
+            row = decoder.decode(record);
+        } catch (NullPointerException npe) {
+            terminateSortCLScript(null, m);
+            return null;
+        } catch (Exception unexpectedException) {
+            LOG.error("Unexpected exception encountered: '{}'. Terminating...", unexpectedException.getMessage());
+            terminateSortCLScript(null, m);
+            return null;
+        }
+        m.getMetrics().decode.recordSince(startNanos);
+        m.getMetrics().eventReceived(row == null || row.getSourceTable() == null ? null : row.getSourceTableIdentifier(), row == null ? 0 : row.getEventTimestamp());
+        if (row == null) {
+            return null;
+        }
+        if (row.isStructureChange()) {
+            logStructureChange(m, row);
+            return null;
+        }
+        if (!isReplicated(m, row.getOperation())) {
+            return null;
+        }
+        return row;
+    }
+
+    // Write a decoded row to the SortCL job for its operation, table and columns, starting the job if there is none yet.
+    public static ScriptKey applyChangeRow(Main m, ChangeRow row) {
+        ScriptKey scriptsKey = null;
+        long startNanos = System.nanoTime();
+        try {
+            String operation = m.getStagingMerge() != null && m.getStagingMerge().isMergeTable(row.getSourceTableIdentifier()) ? StagingMerge.OPERATION : row.getOperation();
+            ScriptKey lookupKey = new ScriptKey(operation, row.getSourceTableIdentifier(), row.getColumns(), row.getSchemaPlan().getColumnsHash());
+            SclScript script = scripts.get().get(lookupKey);
+            if (script != null && script.isStale()) { // The job was classified with libraries that have since changed.
+                retireSortCLScript(script, m);
+                script = null;
+            }
+            if (script == null) { // If the table, operation or set of columns is new, make a new script.
+                script = makeANewScript(m, lookupKey, row);
+                m.getJobEvictor().jobStarted(script);
+            }
+            scriptsKey = script.getKey();
+            m.getMetrics().route.recordSince(startNanos);
+            try {
+                while (!script.writeRow(row)) { // The job was ended after it was looked up; replace it once its process has exited.
+                    script.awaitEnd();
+                    scripts.get().remove(lookupKey, script);
+                    script = makeANewScript(m, lookupKey, row);
+                    m.getJobEvictor().jobStarted(script);
+                }
+            } catch (IOException e) { // Pipe is closed. This could happen if there was an error outputting to the target table.
+                LOG.error("Could not write output to target table '{}'. Aborting...", script.getTargetTableIdentifier());
+                terminateSortCLScript(scriptsKey, m);
+            }
+            if (script.isStaging() && m.getStagingMerge().isBatchDue(script)) { // End the micro-batch and merge it.
+                retireSortCLScript(script, m);
+            } else if (script.isFlushDue(m.getFlushPolicy())) {
+                flushSortCLScript(scriptsKey, m);
+            }
+        } catch (NullPointerException npe) {
+            terminateSortCLScript(scriptsKey, m);
+        } catch (Exception unexpectedException) {
+            LOG.error("Unexpected exception encountered: '{}'. Terminating...", unexpectedException.getMessage());
+            terminateSortCLScript(scriptsKey, m);
+        }
+        m.getMetrics().apply.recordSince(startNanos);
+        return scriptsKey;
+    }
+
+    // Record a database structure change event in the schema change event log, and drop the cached schema plan of the table.
+    public static void logStructureChange(Main m, ChangeRow row) {
+        String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new java.util.Date());
+        String message;
+        if (row.getSourceTable() != null && row.getDdl() != null) {
+            m.getSchemaPlanCache().invalidate(row.getSourceTableIdentifier());
+            message = String.format("%s: Database structure change event '%s' detected for table '%s.%s'.\n", timeStamp, row.getDdl().replaceAll("\\R", " "), row.getSourceSchema(), row.getSourceTable());
+        } else {
+            m.getSchemaPlanCache().invalidateAll(); // The table affected is unknown.
+            message = String.format("%s: Database structure change event detected.\n", timeStamp);
+        }
+        try {
+            m.getFileOutputStream().write(message.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException IoError) {
+            System.out.println(String.format("%s: WARNING: Unable to write to database change event log '%s'.", timeStamp, m.getStructureChangeEventLogPath()));
+        }
+    }
+
+    // Flush the stdin of a SortCL job so that the rows written to it are sent down the pipe.
+    public static void flushSortCLScript(ScriptKey scriptsKey, Main m) {
+        SclScript script = scripts.get().get(scriptsKey);
+        if (script == null) { // The job has been retired.
+            return;
+        }
+        try {
+            script.flush();
+        } catch (IOException e) { // Pipe is closed. This could happen if there was an error outputting to the target table.
+            LOG.error("Could not flush output of replication job associated with table '{}'. Aborting...", script.getSourceTableIdentifier());
+            terminateSortCLScript(scriptsKey, m);
+        }
+    }
+
+    // End a SortCL job so that it can be replaced by a new one. Its remaining rows are sent and its stdin closed, and it is removed once
+    // it has finished writing them to the target. May be called from a thread other than the one writing to the job.
+    public static void retireSortCLScript(SclScript script, Main m) {
+        ScriptKey scriptsKey = script.getKey();
+        try {
+            script.close();
+            if (script.getProcess() != null) { // A file sink has no process to wait for.
+                script.getOutput().drainToEnd();
+                if (script.getProcess().waitFor() != 0) {
+                    LOG.error("SortCL replication job for table '{}' did not end cleanly.", script.getSourceTableIdentifier());
+                    terminateSortCLScript(scriptsKey, m);
+                }
+                if (script.isStaging() && script.takeStagedRows() > 0) {
+                    m.getStagingMerge().merge(script, script.getKeyField());
+                }
+            }
+        } catch (SQLException e) {
+            LOG.error("Could not merge the staged changes into table '{}': {}. Aborting...", script.getTargetTableIdentifier(), e.getMessage());
+            terminateSortCLScript(scriptsKey, m);
+        } catch (IOException e) {
+            LOG.error("Could not end replication job associated with table '{}'. Aborting...", script.getSourceTableIdentifier());
+            terminateSortCLScript(scriptsKey, m);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scripts.get().remove(scriptsKey, script);
+        LOG.info("SortCL replication job for table '{}' ended.", script.getSourceTableIdentifier());
+    }
+
     // May allow for a more graceful termination.
     private static void awaitTermination(ExecutorService executor) {
         try {
@@ -348,94 +461,87 @@ public class Main {
     }
 
     // Applying rules to columns based on data classes.
-    public static void classify(Set<Map.Entry<String, JsonElement>> values, DataClassLibrary dataClassLibrary, ArrayList<SclField> fields) {
+    public static void classify(List<String> values, DataClassLibrary dataClassLibrary, ArrayList<SclField> fields) {
         int count = 0;
-        for (Map.Entry<String, JsonElement> value : values) {
-            for (Map.Entry<Map<String, Rule>, DataClassMatcher> entry : dataClassLibrary.dataMatcherMap.entrySet()) {
-                if (entry.getValue().getDataMatcher().isMatch(value.getValue().getAsString()) || entry.getValue().getNameMatcher().isMatch(fields.get(count).name)) {
-                    fields.get(count).expressionApplied = true;
-                    Rule rule = (Rule) entry.getKey().values().toArray()[0];
-                    fields.get(count).expression = rule.getRule();
-                    fields.get(count).ruleType = rule.getType();
-                    break;
-                }
+        for (String value : values) {
+            Rule rule = classifyColumn(value, fields.get(count).name, dataClassLibrary);
+            if (rule != null) {
+                fields.get(count).expressionApplied = true;
+                fields.get(count).expression = rule.getRule();
+                fields.get(count).ruleType = rule.getType();
             }
             count++;
         }
     }
 
-    // A change event has been detected that requires a new script to be generated and executed.
-    public static void makeANewScript(Main m, String operation, String keyField) {
-        int loopTrack = 0;
-        File tempFile = null;
-        try {
-            tempFile = File.createTempFile("sortcl", ".tmp");
-        } catch (IOException e) {
-            LOG.error("An error occurred when creating a temporary file.", e);
-        }
-        assert tempFile != null;
-        tempFile.deleteOnExit();
-        try { // Generating the SortCL script dynamically.
-            FileWriter myWriter = new FileWriter(tempFile);
-            String dataTarget = m.getProps().getProperty(DATA_TARGET_PROPERTY_NAME);
-            String dataTargetProcessType = m.getProps().getProperty(DATA_TARGET_PROCESS_TYPE_PROPERTY_NAME);
-            String sourceTable = m.getJsonObject().get("payload").getAsJsonObject().get("source").getAsJsonObject().get("table").getAsString();
-            String sourceSchema = getSchema(m, m.getJsonObject().get("payload").getAsJsonObject().get("source").getAsJsonObject());
-            String targetSchema = m.getDataTargetSchema();
-            if (dataTarget != null) {
-                try {
-                    Path dataTargetPath = Paths.get(dataTarget);
-                    String DSN = m.getDSN();
-                    if (DSN != null) {
-                        scripts.get().put(m.getI().get().toString(), new SclScript(sourceTable, sourceSchema, targetSchema, m.getColumns(), operation, dataTargetProcessType, dataTargetPath, m.getPostfixTableName(), DSN));
-                    } else {
-                        scripts.get().put(m.getI().get().toString(), new SclScript(sourceTable, sourceSchema, m.getColumns(), operation, dataTargetProcessType, dataTargetPath, m.getPostfixTableName()));
-                    }
-                } catch (InvalidPathException invalidPathException) {
-                    LOG.error("Invalid target path for replication '{}'...", dataTarget);
-                }
-            } else {
-                scripts.get().put(m.getI().get().toString(), new SclScript(sourceTable, sourceSchema, targetSchema, m.getDSN(), m.getColumns(), operation, m.getPostfixTableName()));
-            }
-            scripts.get().get(m.getI().toString()).setKey(m.getI().toString());
-            for (JsonElement object : m.getFieldsArray()) {
-                String type = object.getAsJsonObject().get("type").getAsString();
-                JsonElement name = object.getAsJsonObject().get("name");
-                if (type == null) {
-                    loopTrack++;
-                    continue;
-                }
-                switch (type) {
-                    case "int32":
-                        if (name == null) {
-                            scripts.get().get(m.getI().get().toString()).getFields().get(loopTrack).setDataType("NUMERIC");
-                            scripts.get().get(m.getI().get().toString()).getFields().get(loopTrack).setPrecision(0);
-                        } else {
-                            scripts.get().get(m.getI().get().toString()).getFields().get(loopTrack).setDataType("ISO_DATE");
-                        }
-                        break;
-                    default:
-
+    // The rule of the first data class matched by a column's value or name, or null if none match.
+    public static Rule classifyColumn(String value, String columnName, DataClassLibrary dataClassLibrary) {
+        return dataClassLibrary.getDataClassIndex().match(value, columnName);
+    }
+
+    // A change event has been detected that requires a new script to be generated and executed. The new job is registered under the given key and returned.
+    // Its sortcl process is started in the background; rows written to the job meanwhile are held until it is running.
+    public static SclScript makeANewScript(Main m, ScriptKey scriptsKey, ChangeRow row) {
+        long startNanos = System.nanoTime();
+        String dataTarget = m.getProps().getProperty(DATA_TARGET_PROPERTY_NAME);
+        String dataTargetProcessType = m.getProps().getProperty(DATA_TARGET_PROCESS_TYPE_PROPERTY_NAME);
+        String sourceTable = row.getSourceTable();
+        String sourceSchema = row.getSourceSchema();
+        String targetSchema = m.getDataTargetSchema();
+        String operation = scriptsKey.getOperation();
+        ArrayList<String> columns = new ArrayList<>(row.getColumns());
+        if (dataTarget != null) {
+            try {
+                Path dataTargetPath = Paths.get(dataTarget);
+                String DSN = m.getDSN();
+                if (DSN != null) {
+                    scripts.get().put(scriptsKey, new SclScript(sourceTable, sourceSchema, targetSchema, columns, operation, dataTargetProcessType, dataTargetPath, m.getPostfixTableName(), DSN));
+                } else {
+                    scripts.get().put(scriptsKey, new SclScript(sourceTable, sourceSchema, columns, operation, dataTargetProcessType, dataTargetPath, m.getPostfixTableName()));
                 }
-                loopTrack++;
+            } catch (InvalidPathException invalidPathException) {
+                LOG.error("Invalid target path for replication '{}'...", dataTarget);
             }
-            classify(m.getAfterJsonPayload().entrySet(), m.getDataClassLibrary(), scripts.get().get(m.getI().get().toString()).getFields());
-            myWriter.write(sortCLScript(scripts.get().get(m.getI().get().toString()), m, keyField));
-            myWriter.close();
-            LOG.info("New SortCL replication job started for table '{}'.", scripts.get().get(m.getI().get().toString()).getSourceTableIdentifier());
-        } catch (IOException e) {
-            LOG.error("An error occurred when writing a SortCL script to a temporary file.");
-            closeSchemaChangeEventLog(m);
-            System.exit(1);
+        } else {
+            scripts.get().put(scriptsKey, new SclScript(sourceTable, sourceSchema, targetSchema, m.getDSN(), columns, operation, m.getPostfixTableName()));
+        }
+        scripts.get().get(scriptsKey).setKey(scriptsKey);
+        scripts.get().get(scriptsKey).setKeyField(row.getKeyField());
+        scripts.get().get(scriptsKey).setMetrics(m.getMetrics().table(row.getSourceTableIdentifier()));
+        row.getSchemaPlan().applyDataTypes(scripts.get().get(scriptsKey).getFields());
+        if (scripts.get().get(scriptsKey).isStaging()) {
+            StagingMerge.addStagingFields(scripts.get().get(scriptsKey).getFields());
+        }
+        List<String> values = new ArrayList<>(row.getValues().length);
+        for (int index = 0; index < row.getValues().length; index++) {
+            values.add(row.getString(index));
         }
+        long classifyStartNanos = System.nanoTime();
+        m.getClassificationCache().classify(row.getSourceTableIdentifier(), values, scripts.get().get(scriptsKey).getFields());
+        m.getMetrics().classify.recordSince(classifyStartNanos);
+        scripts.get().get(scriptsKey).setClassifiedValues(values);
+        if (FileTargetSink.canReplace(scripts.get().get(scriptsKey), m.getFileSinkSettings())) {
+            SclScript sink = startFileTargetSink(m, scripts.get().get(scriptsKey));
+            m.getMetrics().makeScript.recordSince(startNanos);
+            return sink;
+        }
+        scripts.get().get(scriptsKey).setSpawn(m.getScriptSpawner().spawn(sortCLScript(scripts.get().get(scriptsKey), m, row.getKeyField()), row.getSourceTableIdentifier()));
+        m.getMetrics().makeScript.recordSince(startNanos);
+        LOG.info("New SortCL replication job started for table '{}'.", scripts.get().get(scriptsKey).getSourceTableIdentifier());
+        return scripts.get().get(scriptsKey);
+    }
 
+    // Write the rows of a job with no rules to apply straight to its target file, instead of starting a sortcl process.
+    private static SclScript startFileTargetSink(Main m, SclScript script) {
         try {
-            scripts.get().get(m.getI().toString()).setProcess(new ProcessBuilder("sortcl", "/SPEC=" + tempFile.getAbsolutePath()).redirectErrorStream(true).start());
-        } catch (IOException e) {
-            LOG.error("An error occurred when starting sortcl process.");
+            script.setSink(new FileTargetSink(Paths.get(script.getTarget()), m.getDataTargetSeparator(), m.getFileSinkSettings()));
+        } catch (IOException | InvalidPathException e) {
+            LOG.error("Could not open target file '{}': {}", script.getTarget(), e.getMessage());
             closeSchemaChangeEventLog(m);
             System.exit(1);
         }
+        LOG.info("New file sink started for table '{}', writing to '{}'.", script.getSourceTableIdentifier(), script.getSink().getPath());
+        return script;
     }
 
     // Convert actual tab value to \t
@@ -453,12 +559,18 @@ public class Main {
             sb.append("/FIELD=(").append(field.getName()).append(", TYPE=").append("ASCII").append(", POSITION=").append(count).append(", SEPARATOR=\"\\t\"").append(")\n");
         }
         sb.append("/STREAM\n");
-        if (script.getTarget() != null && script.getOperation().equals("c")) {
+        if (script.getTarget() != null && (script.getOperation().equals("c") || script.isStaging())) {
             sb.append("/OUTFILE=").append(script.getTarget()).append("\n").append("/PROCESS=").append(script.getTargetProcessType() != null ? script.getTargetProcessType() : "RECORD").append("\n");
             sb.append("/APPEND\n");
+            if (script.isStaging()) { // Only inserts are written to files.
+                sb.append("/INCLUDE WHERE ").append(StagingMerge.OPERATION_COLUMN).append(" EQ \"c\"\n");
+            }
             count = 0;
             for (SclField field : script.getFields()) {
                 count++;
+                if (script.isStaging() && StagingMerge.isStagingField(field)) {
+                    continue;
+                }
                 if (field.expressionApplied) {
                     if (field.getRuleType() != null && field.getRuleType().equalsIgnoreCase("set")) { // Assuming the set file ends with extension .set - maybe think of a better conditional test later.
                         sb.append("/FIELD=(ALTERED_").append(field.getName()).append(", TYPE=").append(field.getDataType()).append(", POSITION=").append(count).append(", ODEF=\"").append(field.getName()).append("\", SEPARATOR=\"").append(escapeTab(m.getDataTargetSeparator())).append("\", ").append("SET=").append(field.getExpression());
@@ -475,7 +587,7 @@ public class Main {
             }
         }
         if (script.getDSN() != null) {
-            sb.append("/OUTFILE=\"").append(script.getTargetTableIdentifier()).append(";DSN=").append(script.getDSN()).append(";\"\n");
+            sb.append("/OUTFILE=\"").append(script.isStaging() ? m.getStagingMerge().stagingTableIdentifier(script) : script.getTargetTableIdentifier()).append(";DSN=").append(script.getDSN()).append(";\"\n");
             sb.append("/PROCESS=ODBC\n");
             if (script.getOperation().equals("u")) { // Assuming that the first column is a primary key - I don't see any information from Debezium about what columns are keys.
                 sb.append("/UPDATE=(");
@@ -530,57 +642,103 @@ public class Main {
 
     // An error happened in sortcl execution. This prints the error output to the log and terminates the application to give the user a chance to review and correct the error.
     // When the application is started again, Debezium will pick up at the same spot in the database log.
-    public static void terminateSortCLScript(String scriptsKey, Main m) {
+    public static void terminateSortCLScript(ScriptKey scriptsKey, Main m) {
+        SclScript failedScript = scriptsKey == null ? null : scripts.get().get(scriptsKey);
         StringBuilder errorMessage = new StringBuilder();
-        String line;
         try {
-            while ((line = scripts.get().get(scriptsKey).getStdout().readLine()) != null) {
-                errorMessage.append(line);
-                errorMessage.append("\n");
-            }
+            failedScript.getOutput().drainToEnd();
         } catch (IOException | NullPointerException e) {
             LOG.warn("Could not retrieve SortCL output.");
         }
-        if (scripts.get().get(scriptsKey) != null) {
-            LOG.error("SortCL replication job for table '{}' encountered an error:\n{}\nThe job is being terminated.\nCheck the .cserrlog for possible details on the cause of the error.", scripts.get().get(scriptsKey).getSourceTableIdentifier(), errorMessage);
-            for (Map.Entry<String, SclScript> script : scripts.get().entrySet()) {
-                try {
-                    scripts.get().get(script.getKey()).getStdin().close();
-                } catch (IOException e) {
-                    LOG.warn("Failed to close the stdin to local CoSort job: {}.", e.getMessage());
-                }
-                try {
-                    scripts.get().get(script.getKey()).getStderr().close();
-                } catch (IOException e) {
-                    LOG.warn("Failed to close the stderr to local CoSort job: {}.", e.getMessage());
-                }
-                try {
-                    scripts.get().get(script.getKey()).getStdout().close();
-                } catch (IOException e) {
-                    LOG.warn("Failed to close the stdout to local CoSort job: {}.", e.getMessage());
-                }
-                scripts.get().get(script.getKey()).getProcess().destroy();
-                scripts.get().remove(scriptsKey);
+        if (failedScript != null && failedScript.getOutput() != null) {
+            for (String line : failedScript.getOutput().getRecentLines()) {
+                errorMessage.append(line);
+                errorMessage.append("\n");
             }
         }
+        if (failedScript != null) {
+            LOG.error("SortCL replication job for table '{}' encountered an error:\n{}\nThe job is being terminated.\nCheck the .cserrlog for possible details on the cause of the error.", failedScript.getSourceTableIdentifier(), errorMessage);
+            closeSortCLScripts();
+        }
         closeSchemaChangeEventLog(m);
         System.exit(1);
     }
 
-    public JsonObject getAfterJsonPayload() {
-        return afterJsonPayload;
+    // Close the pipes to every SortCL job and stop the jobs.
+    public static void closeSortCLScripts() {
+        for (SclScript script : scripts.get().values()) {
+            try {
+                script.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the stdin to local CoSort job: {}.", e.getMessage());
+            }
+            if (script.getProcess() == null) { // A file sink, or a job whose sortcl process could not be started.
+                continue;
+            }
+            try {
+                script.getOutput().close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the stdout to local CoSort job: {}.", e.getMessage());
+            }
+            script.getProcess().destroy();
+        }
+        scripts.get().clear();
+    }
+
+    public ReplicationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ReplicationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public StagingMerge getStagingMerge() {
+        return stagingMerge;
+    }
+
+    public void setStagingMerge(StagingMerge stagingMerge) {
+        this.stagingMerge = stagingMerge;
     }
 
-    public void setAfterJsonPayload(JsonObject afterJsonPayload) {
-        this.afterJsonPayload = afterJsonPayload;
+    public RowCoalescer getRowCoalescer() {
+        return rowCoalescer;
     }
 
-    public ArrayList<String> getColumns() {
-        return columns;
+    public void setRowCoalescer(RowCoalescer rowCoalescer) {
+        this.rowCoalescer = rowCoalescer;
     }
 
-    public void setColumns(ArrayList<String> columns) {
-        this.columns = columns;
+    public JobEvictor getJobEvictor() {
+        return jobEvictor;
+    }
+
+    public void setJobEvictor(JobEvictor jobEvictor) {
+        this.jobEvictor = jobEvictor;
+    }
+
+    public ScriptSpawner getScriptSpawner() {
+        return scriptSpawner;
+    }
+
+    public void setScriptSpawner(ScriptSpawner scriptSpawner) {
+        this.scriptSpawner = scriptSpawner;
+    }
+
+    public FileTargetSink.Settings getFileSinkSettings() {
+        return fileSinkSettings;
+    }
+
+    public void setFileSinkSettings(FileTargetSink.Settings fileSinkSettings) {
+        this.fileSinkSettings = fileSinkSettings;
+    }
+
+    public ClassificationCache getClassificationCache() {
+        return classificationCache;
+    }
+
+    public void setClassificationCache(ClassificationCache classificationCache) {
+        this.classificationCache = classificationCache;
     }
 
     public DataClassLibrary getDataClassLibrary() {
@@ -615,28 +773,32 @@ public class Main {
         this.dataTargetSeparator = dataTargetSeparator;
     }
 
-    public JsonArray getFieldsArray() {
-        return fieldsArray;
+    public ApplyPipeline getApplyPipeline() {
+        return applyPipeline;
+    }
+
+    public void setApplyPipeline(ApplyPipeline applyPipeline) {
+        this.applyPipeline = applyPipeline;
     }
 
-    public void setFieldsArray(JsonArray fieldsArray) {
-        this.fieldsArray = fieldsArray;
+    public String getLibrarySnapshotPath() {
+        return librarySnapshotPath;
     }
 
-    public AtomicReference<Integer> getI() {
-        return i;
+    public void setLibrarySnapshotPath(String librarySnapshotPath) {
+        this.librarySnapshotPath = librarySnapshotPath;
     }
 
-    public void setI(AtomicReference<Integer> i) {
-        this.i = i;
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
     }
 
-    public JsonObject getJsonObject() {
-        return jsonObject;
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
     }
 
-    public void setJsonObject(JsonObject jsonObject) {
-        this.jsonObject = jsonObject;
+    public SchemaPlanCache getSchemaPlanCache() {
+        return schemaPlanCache;
     }
 
     public String getPostfixTableName() {
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Serves the replication metrics in the Prometheus text exposition format, from the HTTP server built into the JDK. It
+ * listens on the loopback interface unless another host is configured.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public class MetricsEndpoint {
+    static final String DEFAULT_HOST = "127.0.0.1";
+    static final String PATH = "/metrics";
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+
+    private final ReplicationMetrics metrics;
+    private final HttpServer server;
+
+    private MetricsEndpoint(ReplicationMetrics metrics, HttpServer server) {
+        this.metrics = metrics;
+        this.server = server;
+    }
+
+    static MetricsEndpoint start(ReplicationMetrics metrics, String host, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        MetricsEndpoint endpoint = new MetricsEndpoint(metrics, server);
+        server.createContext(PATH, endpoint::handle);
+        server.setExecutor(null); // Requests are served one at a time on the server's own thread.
+        server.start();
+        return endpoint;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // The metrics as Prometheus text. Times are in seconds, as Prometheus expects.
+    String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        counter(sb, "ripcurrent_events_total", "Change events received from the engine.", metrics.getEvents());
+        for (LatencyHistogram stage : metrics.getStages()) {
+            stage(sb, "ripcurrent_" + snakeCase(stage.getName()) + "_seconds", stage);
+        }
+        ScriptSpawner spawner = metrics.getScriptSpawner();
+        if (spawner != null) {
+            header(sb, "ripcurrent_spawn_seconds", "summary", "Time from asking for a SortCL job until sortcl is running.");
+            sample(sb, "ripcurrent_spawn_seconds_sum", null, spawner.getSpawnNanos() / 1e9);
+            sample(sb, "ripcurrent_spawn_seconds_count", null, spawner.getSpawns());
+            gauge(sb, "ripcurrent_spawn_seconds_max", "Longest time taken to start sortcl.", spawner.getMaxSpawnNanos() / 1e9);
+        }
+        gauge(sb, "ripcurrent_live_jobs", "SortCL jobs currently running.", metrics.getLiveJobs());
+        counter(sb, "ripcurrent_coalesced_rows_saved_total", "Rows not written to SortCL jobs because of coalescing.", metrics.getRowsCoalescedAway());
+        counter(sb, "ripcurrent_coalesced_updates_collapsed_total", "Updates replaced by a later change to the same key.", metrics.getUpdatesCollapsed());
+        counter(sb, "ripcurrent_coalesced_inserts_cancelled_total", "Inserts dropped along with the delete of the same key.", metrics.getInsertsCancelled());
+        counter(sb, "ripcurrent_staging_batches_merged_total", "Staged micro-batches merged into their target tables.", metrics.getStagingBatchesMerged());
+        counter(sb, "ripcurrent_staging_rows_merged_total", "Staged rows merged into their target tables.", metrics.getStagingRowsMerged());
+        header(sb, "ripcurrent_table_events_total", "counter", "Change events received for each source table.");
+        for (TableMetrics table : metrics.getTables()) {
+            sample(sb, "ripcurrent_table_events_total", table.getTable(), table.getEvents());
+        }
+        header(sb, "ripcurrent_table_events_per_second", "gauge", "Change events received for each source table per second, over the last second.");
+        for (TableMetrics table : metrics.getTables()) {
+            sample(sb, "ripcurrent_table_events_per_second", table.getTable(), table.getEventsPerSecond());
+        }
+        header(sb, "ripcurrent_table_rows_written_total", "counter", "Rows written to the SortCL jobs of each source table.");
+        for (TableMetrics table : metrics.getTables()) {
+            sample(sb, "ripcurrent_table_rows_written_total", table.getTable(), table.getRowsWritten());
+        }
+        header(sb, "ripcurrent_table_bytes_written_total", "counter", "Bytes written to the SortCL jobs of each source table.");
+        for (TableMetrics table : metrics.getTables()) {
+            sample(sb, "ripcurrent_table_bytes_written_total", table.getTable(), table.getBytesWritten());
+        }
+        header(sb, "ripcurrent_table_flushes_total", "counter", "Flushes of the stdin of the SortCL jobs of each source table.");
+        for (TableMetrics table : metrics.getTables()) {
+            sample(sb, "ripcurrent_table_flushes_total", table.getTable(), table.getFlushes());
+        }
+        header(sb, "ripcurrent_table_commit_to_write_seconds", "summary", "Time from a change to each source table in the source database until its row is written.");
+        for (TableMetrics table : metrics.getTables()) {
+            LatencyHistogram histogram = table.getCommitToWrite();
+            if (histogram == null) { // No row of the table has had a source timestamp yet.
+                continue;
+            }
+            String label = "table=\"" + escapeLabel(table.getTable()) + "\"";
+            for (String quantile : QUANTILES) {
+                sb.append("ripcurrent_table_commit_to_write_seconds{").append(label).append(",quantile=\"").append(quantile).append("\"} ").append(histogram.getPercentileNanos(Double.parseDouble(quantile)) / 1e9).append('\n');
+            }
+            sb.append("ripcurrent_table_commit_to_write_seconds_sum{").append(label).append("} ").append(histogram.getTotalNanos() / 1e9).append('\n');
+            sb.append("ripcurrent_table_commit_to_write_seconds_count{").append(label).append("} ").append(histogram.getCount()).append('\n');
+        }
+        header(sb, "ripcurrent_table_lag_seconds", "gauge", "Time between the last row of each source table being changed in the source database and being written.");
+        for (TableMetrics table : metrics.getTables()) {
+            sample(sb, "ripcurrent_table_lag_seconds", table.getTable(), table.getLagMillis() / 1e3);
+        }
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, double value) {
+        header(sb, name, "counter", help);
+        sample(sb, name, null, value);
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, double value) {
+        header(sb, name, "gauge", help);
+        sample(sb, name, null, value);
+    }
+
+    // A latency histogram as a summary, with the percentiles of everything recorded since startup.
+    private static void stage(StringBuilder sb, String name, LatencyHistogram histogram) {
+        header(sb, name, "summary", histogram.getDescription());
+        for (String quantile : QUANTILES) {
+            sb.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(histogram.getPercentileNanos(Double.parseDouble(quantile)) / 1e9).append('\n');
+        }
+        sample(sb, name + "_sum", null, histogram.getTotalNanos() / 1e9);
+        sample(sb, name + "_count", null, histogram.getCount());
+    }
+
+    static String snakeCase(String name) {
+        return name.replaceAll("([a-z])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String table, double value) {
+        sb.append(name);
+        if (table != null) {
+            sb.append("{table=\"").append(escapeLabel(table)).append("\"}");
+        }
+        sb.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+}
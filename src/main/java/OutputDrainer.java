@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: A single background thread that reads the output of every running SortCL job, so that no job can fill its output pipe
+ * and stop reading its stdin, without dedicating threads to each job.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class OutputDrainer {
+    private static final Logger LOG = LoggerFactory.getLogger(OutputDrainer.class);
+    static final long PERIOD_MILLIS = 50; // A pipe holds at least 4 KB, far more than sortcl writes in this time.
+
+    static ScheduledExecutorService start() {
+        ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sortcl-output-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(() -> {
+            for (SclScript script : Main.scripts.get().values()) {
+                SclOutput output = script.getOutput();
+                if (output == null) { // The job is still being started.
+                    continue;
+                }
+                try {
+                    output.drain();
+                } catch (IOException e) { // The job is being closed.
+                    LOG.debug("Could not read the output of the SortCL job for table '{}': {}", script.getSourceTableIdentifier(), e.getMessage());
+                }
+            }
+        }, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        return drainer;
+    }
+}
@@ -22,4 +22,8 @@ public class PatternMatcher implements DataMatcher {
         final Matcher matcher = this.pattern.matcher(data);
         return matcher.matches();
     }
+
+    public String getPatternString() {
+        return pattern.pattern();
+    }
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Metrics of the hot path of Ripcurrent: handling change events from the engine, decoding them, classifying the columns and
+ * starting the SortCL job of new tables, and writing rows to the jobs, along with the metrics of each source table. They are kept
+ * with cheap counters and latency histograms, published as JMX MBeans under com.iri.ripcurrent, and optionally served in the
+ * Prometheus text format. The percentiles of each stage over the last interval are also written to the log periodically.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ReplicationMetrics implements ReplicationMetricsMBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationMetrics.class);
+    static final String DOMAIN = "com.iri.ripcurrent";
+    static final long SAMPLE_MILLIS = 1000; // Interval the event rates are worked out over.
+    static final long DEFAULT_LATENCY_LOG_MILLIS = 60000;
+    static final double[] LOGGED_PERCENTILES = {0.5, 0.99, 0.999};
+
+    final LatencyHistogram batches = new LatencyHistogram("batch", "Time spent handling batches of change events delivered by the engine.");
+    final LatencyHistogram delivery = new LatencyHistogram("delivery", "Time from Debezium handling a change (payload.ts_ms) until it reaches Ripcurrent.");
+    final LatencyHistogram decode = new LatencyHistogram("decode", "Time spent decoding change events.");
+    final LatencyHistogram route = new LatencyHistogram("route", "Time spent finding, or making, the SortCL job of each row.");
+    final LatencyHistogram render = new LatencyHistogram("render", "Time spent encoding the values of each row, including temporal values, into the bytes sent to SortCL.");
+    final LatencyHistogram write = new LatencyHistogram("write", "Time spent writing each row to the stdin of its SortCL job.");
+    final LatencyHistogram flush = new LatencyHistogram("flush", "Time spent flushing the stdin of SortCL jobs.");
+    final LatencyHistogram apply = new LatencyHistogram("apply", "Time spent routing, rendering and writing decoded rows.");
+    final LatencyHistogram classify = new LatencyHistogram("classify", "Time spent classifying the columns of new SortCL jobs.");
+    final LatencyHistogram makeScript = new LatencyHistogram("makeScript", "Time spent making new SortCL jobs, before sortcl is started.");
+    final LatencyHistogram commitToWrite = new LatencyHistogram("commitToWrite", "Time from a change in the source database (payload.source.ts_ms) until its row is written.");
+    private final LatencyHistogram[] stages = {delivery, batches, decode, route, render, write, flush, apply, classify, makeScript, commitToWrite};
+    private final LongAdder events = new LongAdder();
+    private final ConcurrentHashMap<String, TableMetrics> tables = new ConcurrentHashMap<>();
+    private Main m;
+    private MBeanServer mBeanServer; // Null unless the metrics are published over JMX.
+    private MetricsEndpoint endpoint; // Null unless the metrics are served over HTTP.
+
+    // Publish the metrics as configured, and start sampling the event rates.
+    void start(Main m, Properties props) {
+        this.m = m;
+        if (!"false".equalsIgnoreCase(props.getProperty(Main.METRICS_JMX_PROPERTY_NAME))) {
+            mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            register(this, "type=Replication");
+            for (LatencyHistogram stage : stages) {
+                register(stage, "type=Latency,stage=" + stage.getName());
+            }
+            for (TableMetrics table : tables.values()) {
+                registerTable(table);
+            }
+        }
+        String port = props.getProperty(Main.METRICS_HTTP_PORT_PROPERTY_NAME);
+        if (port != null && !port.trim().isEmpty()) {
+            String host = props.getProperty(Main.METRICS_HTTP_HOST_PROPERTY_NAME, MetricsEndpoint.DEFAULT_HOST);
+            try {
+                endpoint = MetricsEndpoint.start(this, host, Integer.parseInt(port.trim()));
+                LOG.info("Serving metrics at http://{}:{}{}.", host, endpoint.getPort(), MetricsEndpoint.PATH);
+            } catch (IOException | IllegalArgumentException e) {
+                LOG.warn("Could not serve metrics on {}:{}: {}", host, port, e.getMessage());
+            }
+        }
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (TableMetrics table : tables.values()) {
+                table.sample(now);
+            }
+        }, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        long logMillis = parseMillis(props, Main.LATENCY_LOG_INTERVAL_PROPERTY_NAME, DEFAULT_LATENCY_LOG_MILLIS);
+        if (logMillis > 0) {
+            sampler.scheduleWithFixedDelay(new LatencyLogger(logMillis), logMillis, logMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long parseMillis(Properties props, String propertyName, long defaultValue) {
+        String value = props.getProperty(propertyName);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for property {}. The default of {} will be used.", value, propertyName, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private void register(Object mBean, String properties) {
+        try {
+            mBeanServer.registerMBean(mBean, new ObjectName(DOMAIN + ":" + properties));
+        } catch (JMException e) {
+            LOG.warn("Could not register metrics MBean '{}': {}", properties, e.getMessage());
+        }
+    }
+
+    private void registerTable(TableMetrics table) {
+        register(table, "type=Table,name=" + ObjectName.quote(table.getTable()));
+    }
+
+    // The metrics of a source table, made on first use.
+    public TableMetrics table(String sourceTableIdentifier) {
+        TableMetrics table = tables.get(sourceTableIdentifier);
+        if (table == null) {
+            table = tables.computeIfAbsent(sourceTableIdentifier, identifier -> new TableMetrics(identifier, this));
+            synchronized (this) {
+                if (mBeanServer != null && !mBeanServer.isRegistered(tableName(sourceTableIdentifier))) {
+                    registerTable(table);
+                }
+            }
+        }
+        return table;
+    }
+
+    private static ObjectName tableName(String sourceTableIdentifier) {
+        try {
+            return new ObjectName(DOMAIN + ":type=Table,name=" + ObjectName.quote(sourceTableIdentifier));
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    // A change event was received from the engine, for the given table, or for no table. The event timestamp is when Debezium
+    // handled it, or 0 if unknown.
+    void eventReceived(String sourceTableIdentifier, long eventTimestamp) {
+        events.increment();
+        if (eventTimestamp > 0) {
+            delivery.record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - eventTimestamp));
+        }
+        if (sourceTableIdentifier != null) {
+            table(sourceTableIdentifier).eventReceived();
+        }
+    }
+
+    public Collection<TableMetrics> getTables() {
+        return tables.values();
+    }
+
+    public LatencyHistogram[] getStages() {
+        return stages;
+    }
+
+    @Override
+    public long getEvents() {
+        return events.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.getCount();
+    }
+
+    @Override
+    public double getBatchMillisAverage() {
+        return batches.getMeanMicros() / 1e3;
+    }
+
+    @Override
+    public double getDecodeMicrosAverage() {
+        return decode.getMeanMicros();
+    }
+
+    @Override
+    public double getApplyMicrosAverage() {
+        return apply.getMeanMicros();
+    }
+
+    @Override
+    public long getClassifications() {
+        return classify.getCount();
+    }
+
+    @Override
+    public double getClassifyMicrosAverage() {
+        return classify.getMeanMicros();
+    }
+
+    @Override
+    public long getJobsStarted() {
+        return makeScript.getCount();
+    }
+
+    @Override
+    public double getMakeScriptMillisAverage() {
+        return makeScript.getMeanMicros() / 1e3;
+    }
+
+    @Override
+    public double getSpawnMillisAverage() {
+        ScriptSpawner spawner = m == null ? null : m.getScriptSpawner();
+        return spawner == null || spawner.getSpawns() == 0 ? 0 : spawner.getSpawnNanos() / 1e6 / spawner.getSpawns();
+    }
+
+    @Override
+    public double getSpawnMillisMax() {
+        ScriptSpawner spawner = m == null ? null : m.getScriptSpawner();
+        return spawner == null ? 0 : spawner.getMaxSpawnNanos() / 1e6;
+    }
+
+    @Override
+    public int getLiveJobs() {
+        return Main.scripts.get() == null ? 0 : Main.scripts.get().size();
+    }
+
+    @Override
+    public long getRowsCoalescedAway() {
+        return m == null || m.getRowCoalescer() == null ? 0 : m.getRowCoalescer().getRowsSaved();
+    }
+
+    @Override
+    public long getUpdatesCollapsed() {
+        return m == null || m.getRowCoalescer() == null ? 0 : m.getRowCoalescer().getUpdatesCollapsed();
+    }
+
+    @Override
+    public long getInsertsCancelled() {
+        return m == null || m.getRowCoalescer() == null ? 0 : m.getRowCoalescer().getInsertsCancelled();
+    }
+
+    @Override
+    public long getStagingBatchesMerged() {
+        return m == null || m.getStagingMerge() == null ? 0 : m.getStagingMerge().getBatchesMerged();
+    }
+
+    @Override
+    public long getStagingRowsMerged() {
+        return m == null || m.getStagingMerge() == null ? 0 : m.getStagingMerge().getRowsMerged();
+    }
+
+    public ScriptSpawner getScriptSpawner() {
+        return m == null ? null : m.getScriptSpawner();
+    }
+
+    // Writes the percentiles of each stage, and of the commit to write latency of each table, over the last interval to the log.
+    private class LatencyLogger implements Runnable {
+        private final long intervalMillis;
+        private final Map<LatencyHistogram, long[]> previous = new HashMap<>();
+
+        LatencyLogger(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+
+        @Override
+        public void run() {
+            StringBuilder sb = new StringBuilder();
+            for (LatencyHistogram stage : stages) {
+                append(sb, stage.getName(), stage);
+            }
+            for (TableMetrics table : tables.values()) {
+                if (table.getCommitToWrite() != null) {
+                    append(sb, table.getTable() + " commitToWrite", table.getCommitToWrite());
+                }
+            }
+            if (sb.length() > 0) {
+                LOG.info("Latencies over the last {} s (p50 / p99 / p99.9 / max, count):{}", intervalMillis / 1000, sb);
+            }
+        }
+
+        private void append(StringBuilder sb, String name, LatencyHistogram histogram) {
+            long[] counts = histogram.snapshot();
+            long[] last = previous.put(histogram, counts);
+            long[] interval = counts.clone();
+            long total = 0;
+            int highest = -1;
+            for (int bucket = 0; bucket < interval.length; bucket++) {
+                interval[bucket] -= last == null ? 0 : last[bucket];
+                total += interval[bucket];
+                if (interval[bucket] > 0) {
+                    highest = bucket;
+                }
+            }
+            if (total == 0) {
+                return;
+            }
+            sb.append("\n    ").append(name).append(": ");
+            for (double fraction : LOGGED_PERCENTILES) {
+                sb.append(formatNanos(histogram.percentile(interval, total, fraction))).append(" / ");
+            }
+            sb.append(formatNanos(histogram.highestInBucket(highest))).append(", ").append(total);
+        }
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + " ns";
+        } else if (nanos < 10_000_000) {
+            return nanos / 1000 + " us";
+        } else if (nanos < 10_000_000_000L) {
+            return nanos / 1_000_000 + " ms";
+        }
+        return nanos / 1_000_000_000 + " s";
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: JMX view of the replication metrics of the whole application. Times are averages since startup unless named as maxima.
+ *
+ * Contributors:
+ *     devonk
+ */
+public interface ReplicationMetricsMBean {
+    long getEvents();
+
+    long getBatches();
+
+    double getBatchMillisAverage();
+
+    double getDecodeMicrosAverage();
+
+    double getApplyMicrosAverage();
+
+    long getClassifications();
+
+    double getClassifyMicrosAverage();
+
+    long getJobsStarted();
+
+    double getMakeScriptMillisAverage();
+
+    double getSpawnMillisAverage();
+
+    double getSpawnMillisMax();
+
+    int getLiveJobs();
+
+    long getRowsCoalescedAway();
+
+    long getUpdatesCollapsed();
+
+    long getInsertsCancelled();
+
+    long getStagingBatchesMerged();
+
+    long getStagingRowsMerged();
+}
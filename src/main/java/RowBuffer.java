@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Growable byte buffer that the rows of a SortCL job are encoded into, in the charset the job reads its stdin in, before
+ * they are written to the pipe. Values are encoded straight into the buffer: ASCII characters are copied as they are, other characters
+ * are encoded in place when the charset is UTF-8, and numbers are written digit by digit, so encoding a row does not allocate.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class RowBuffer {
+    static final Charset CHARSET = Charset.defaultCharset(); // The charset rows are written to the stdin of a SortCL job in.
+    static final boolean UTF_8 = CHARSET.equals(StandardCharsets.UTF_8);
+    static final boolean ASCII_COMPATIBLE = isAsciiCompatible(CHARSET);
+    static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(CHARSET);
+    static final byte[] TAB = "\t".getBytes(CHARSET);
+    private static final int MIN_CAPACITY = 4096;
+
+    private byte[] bytes;
+    private int length;
+
+    RowBuffer() {
+        this(MIN_CAPACITY);
+    }
+
+    RowBuffer(int capacity) {
+        this.bytes = new byte[Math.max(16, capacity)];
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        char[] ascii = new char[128];
+        for (int index = 0; index < ascii.length; index++) {
+            ascii[index] = (char) index;
+        }
+        String sample = new String(ascii);
+        return Arrays.equals(sample.getBytes(charset), sample.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Make room for this many more bytes.
+    private void ensure(int extra) {
+        if (bytes.length - length < extra) {
+            bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+        }
+    }
+
+    public void put(byte value) {
+        ensure(1);
+        bytes[length++] = value;
+    }
+
+    public void put(byte[] values) {
+        put(values, 0, values.length);
+    }
+
+    public void put(byte[] values, int offset, int count) {
+        ensure(count);
+        System.arraycopy(values, offset, bytes, length, count);
+        length += count;
+    }
+
+    // Encode a value in the charset of the stdin.
+    public void putString(String value) {
+        int count = value.length();
+        ensure(count);
+        int start = length;
+        if (ASCII_COMPATIBLE) {
+            for (int index = 0; index < count; index++) {
+                char c = value.charAt(index);
+                if (c >= 0x80) {
+                    length = start;
+                    putEncoded(value);
+                    return;
+                }
+                bytes[length++] = (byte) c;
+            }
+            return;
+        }
+        put(value.getBytes(CHARSET));
+    }
+
+    // A value that is not all ASCII. In UTF-8 it is encoded in place; other charsets are left to the JDK.
+    private void putEncoded(String value) {
+        if (!UTF_8) {
+            put(value.getBytes(CHARSET));
+            return;
+        }
+        int count = value.length();
+        ensure(count * 3);
+        for (int index = 0; index < count; index++) {
+            char c = value.charAt(index);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && index + 1 < count && Character.isLowSurrogate(value.charAt(index + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++index));
+                bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) { // Unpaired, which String.getBytes replaces in the same way.
+                bytes[length++] = (byte) '?';
+            } else {
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    // A whole number, as Long.toString writes it.
+    public void putLong(long value) {
+        if (!ASCII_COMPATIBLE || value == Long.MIN_VALUE) {
+            putString(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        for (int index = length + digits - 1; index >= length; index--) {
+            bytes[index] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    // Make room for this many more bytes, for a formatter that writes into array() from length() on and then sets the length.
+    public void reserve(int count) {
+        ensure(count);
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    // Write out the buffer and empty it.
+    public void writeTo(OutputStream out) throws IOException {
+        if (length > 0) {
+            out.write(bytes, 0, length);
+            length = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, CHARSET);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Coalesces the changes to each row of a table held over a window of change events, before they are written to the
+ * SortCL jobs of an ODBC target. Repeated updates of a key collapse to the last image, an update followed by a delete becomes the
+ * delete, and, when inserts are not also written to files, an insert absorbs the updates that follow it and an insert followed by a
+ * delete cancels out. The changes to a key are always applied in the order they were made.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RowCoalescer {
+    private static final Logger LOG = LoggerFactory.getLogger(RowCoalescer.class);
+
+    private final int windowRows; // Release the held rows once there are this many; 0 for no limit.
+    private final long windowMillis; // Release the held rows once the oldest has waited this long; 0 for no limit.
+    private final boolean mergeInserts; // False when inserts are also written to files, which must receive every insert as it was made.
+    private final AtomicLong rowsIn = new AtomicLong();
+    private final AtomicLong rowsOut = new AtomicLong();
+    private final AtomicLong updatesCollapsed = new AtomicLong(); // Updates replaced by a later update or delete of the same key, or merged into its insert.
+    private final AtomicLong insertsCancelled = new AtomicLong(); // Inserts dropped along with the delete of the same key.
+
+    RowCoalescer(int windowRows, long windowMillis, boolean mergeInserts) {
+        this.windowRows = windowRows;
+        this.windowMillis = windowMillis;
+        this.mergeInserts = mergeInserts;
+    }
+
+    // Null unless a window is set and updates and deletes are replicated to a DSN.
+    static RowCoalescer fromProperties(Main m, Properties props) {
+        long windowRows = parseLimit(props, Main.COALESCE_WINDOW_ROWS_PROPERTY_NAME);
+        long windowMillis = parseLimit(props, Main.COALESCE_WINDOW_MS_PROPERTY_NAME);
+        if (windowRows == 0 && windowMillis == 0) {
+            return null;
+        }
+        if (m.getDSN() == null) {
+            LOG.warn("Updates and deletes are only replicated when a DSN is set. They will not be coalesced.");
+            return null;
+        }
+        LOG.info("Coalescing updates and deletes over windows of {} rows and {} ms.", windowRows == 0 ? "any number of" : windowRows, windowMillis == 0 ? "any number of" : windowMillis);
+        return new RowCoalescer((int) Math.min(windowRows, Integer.MAX_VALUE), windowMillis, props.getProperty(Main.DATA_TARGET_PROPERTY_NAME) == null);
+    }
+
+    private static long parseLimit(Properties props, String propertyName) {
+        String value = props.getProperty(propertyName);
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for property {}. The limit will not be applied.", value, propertyName);
+            return 0;
+        }
+    }
+
+    // True when the held rows should be written to their jobs.
+    public boolean isReleaseDue(int heldRows, long oldestHeldNanos, long nowNanos) {
+        return heldRows > 0 && ((windowRows > 0 && heldRows >= windowRows)
+                || (windowMillis > 0 && nowNanos - oldestHeldNanos >= TimeUnit.MILLISECONDS.toNanos(windowMillis)));
+    }
+
+    // Coalesce rows held in the order they were changed. Each key keeps at most its latest entry, which is replaced in place as later
+    // changes arrive; a change that cannot be merged with it is added after it, which keeps the changes to the key in order.
+    public List<ChangeRow> coalesce(List<ChangeRow> rows) {
+        List<ChangeRow> coalesced = new ArrayList<>(rows.size());
+        Map<String, Integer> latest = new HashMap<>(); // Index of the latest entry of each table and key.
+        for (ChangeRow row : rows) {
+            String key = keyOf(row);
+            Integer index = latest.get(key);
+            ChangeRow previous = index == null ? null : coalesced.get(index);
+            if (previous != null && row.getOperation().equals("u") && (previous.getOperation().equals("u") || previous.getOperation().equals("c") && mergeInserts)) {
+                coalesced.set(index, previous.getOperation().equals("c") ? row.withOperation("c") : row); // An insert takes the latest image.
+                updatesCollapsed.incrementAndGet();
+            } else if (previous != null && row.getOperation().equals("d") && previous.getOperation().equals("u")) {
+                coalesced.set(index, row);
+                updatesCollapsed.incrementAndGet();
+            } else if (previous != null && row.getOperation().equals("d") && previous.getOperation().equals("c") && mergeInserts) {
+                coalesced.set(index, null); // The row never needs to reach the target.
+                latest.remove(key);
+                insertsCancelled.incrementAndGet();
+            } else {
+                latest.put(key, coalesced.size());
+                coalesced.add(row);
+            }
+        }
+        coalesced.removeIf(row -> row == null);
+        rowsIn.addAndGet(rows.size());
+        rowsOut.addAndGet(coalesced.size());
+        LOG.debug("Coalesced {} rows into {}.", rows.size(), coalesced.size());
+        return coalesced;
+    }
+
+    // The table and the value of the key column. Without a known key, the first column is the key, as for /UPDATE and /DELETE.
+    private static String keyOf(ChangeRow row) {
+        int keyIndex = row.getKeyField() == null ? 0 : Math.max(0, row.getColumns().indexOf(row.getKeyField()));
+        return row.getSourceTableIdentifier() + '\u0000' + row.getString(keyIndex);
+    }
+
+    public long getRowsIn() {
+        return rowsIn.get();
+    }
+
+    public long getRowsOut() {
+        return rowsOut.get();
+    }
+
+    // Rows that were not written to a SortCL job because of coalescing.
+    public long getRowsSaved() {
+        return rowsIn.get() - rowsOut.get();
+    }
+
+    public long getUpdatesCollapsed() {
+        return updatesCollapsed.get();
+    }
+
+    public long getInsertsCancelled() {
+        return insertsCancelled.get();
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+}
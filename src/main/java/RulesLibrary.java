@@ -9,54 +9,75 @@
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.File;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
 public class RulesLibrary {
     private static final Logger LOG = LoggerFactory.getLogger(RulesLibrary.class);
     Map<String, Rule> rules = new HashMap<>();
+    boolean parsed; // False if a library was configured but could not be read.
+
+    // A library of rules restored from a library snapshot.
+    RulesLibrary(Map<String, Rule> rules) {
+        this.rules = rules;
+        this.parsed = true;
+    }
 
     // name, rule
     RulesLibrary(String filePath) {
-        try {
-            File dataClassLibraryFile = new File(filePath);
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(dataClassLibraryFile);
-            doc.getDocumentElement().normalize();
-            NodeList nList = doc.getElementsByTagName("rules");
-            for (int temp = 0; temp < nList.getLength(); temp++) {
-                Node nNode = nList.item(temp);
-                if (nNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element eElement = (Element) nNode;
-                    NodeList matchersList = eElement.getElementsByTagName("properties");
-                    for (int temp2 = 0; temp2 < matchersList.getLength(); temp2++) {
-                        Node nNode2 = matchersList.item(temp2);
-                        switch (nNode2.getAttributes().getNamedItem("fieldRulePropertyType").getNodeValue()) {
-                            case "EXPRESSION":
-                                rules.put(((Element) nNode).getAttribute("name"), new Rule("Expression", nNode2.getAttributes().getNamedItem("value").getNodeValue()));
-                                break;
-                            case "SET":
-                                rules.put(((Element) nNode).getAttribute("name"), new Rule("Set", nNode2.getAttributes().getNamedItem("value").getNodeValue().replace("&quot;", "").replace(" SELECT=ANY", "")));
-                                break;
-                            default:
-                        }
-                    }
+        parsed = filePath == null;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(filePath))) {
+            XMLStreamReader reader = LibraryXml.open(input);
+            LibraryXml.nextTag(reader); // The library element; of its children, only the rules are read.
+            while (LibraryXml.nextTag(reader) == XMLStreamConstants.START_ELEMENT) {
+                if (reader.getLocalName().equals("rules")) {
+                    readRule(reader);
+                } else {
+                    LibraryXml.skipElement(reader);
                 }
             }
+            reader.close();
+            parsed = true;
         } catch (Exception e) {
             LOG.warn("Could not parse rules library '{}'...", filePath, e);
         }
+    }
 
+    // Read the expression or set of a rule from its properties, which may be nested at any depth within the rule.
+    private void readRule(XMLStreamReader reader) throws XMLStreamException {
+        String name = LibraryXml.attribute(reader, "name");
+        if (name == null) {
+            name = "";
+        }
+        int depth = 1;
+        while (depth > 0) {
+            if (LibraryXml.nextTag(reader) == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            depth++;
+            if (!reader.getLocalName().equals("properties")) {
+                continue;
+            }
+            String value = LibraryXml.attribute(reader, "value");
+            String type = LibraryXml.attribute(reader, "fieldRulePropertyType");
+            if ("EXPRESSION".equals(type)) {
+                rules.put(name, new Rule("Expression", value));
+            } else if ("SET".equals(type) && value != null) {
+                rules.put(name, new Rule("Set", value.replace("&quot;", "").replace(" SELECT=ANY", "")));
+            }
+        }
+    }
 
+    public boolean isParsed() {
+        return parsed;
     }
 
     public Map<String, Rule> getRules() {
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Per-column plan compiled once from the schema of a source table. It holds the column names, the primary key field,
+ * the conversion needed for each column (dates, times and timestamps arrive from Debezium as numbers, and zoned timestamps as text
+ * with an offset) and the SortCL data type of each column, so rows can be rendered, or encoded straight into the bytes sent to
+ * SortCL, in a single indexed pass without inspecting the schema again.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public final class SchemaPlan {
+    enum Conversion {
+        NONE(null), DATE(TimeUnit.DAYS), MICRO_TIME(TimeUnit.MICROSECONDS), NANO_TIME(TimeUnit.NANOSECONDS), TIMESTAMP(TimeUnit.MILLISECONDS),
+        MICRO_TIMESTAMP(TimeUnit.MICROSECONDS), NANO_TIMESTAMP(TimeUnit.NANOSECONDS), ZONED_TIMESTAMP(null);
+
+        final TimeUnit unit; // Of the number the value arrives as.
+
+        Conversion(TimeUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    private final long fingerprint; // Identifies the version of a JSON schema the plan was compiled from.
+    private final Schema schema; // The Kafka Connect row schema the plan was compiled from, if any.
+    private final List<String> columns;
+    private final int columnsHash; // Signature of the column names, used to route rows to their SortCL job.
+    private final String keyField; // First field of the primary key, or null if unknown.
+    private final Conversion[] conversions;
+    private final String[] dataTypes; // SortCL data type of each column, or null to keep the default.
+
+    private SchemaPlan(long fingerprint, Schema schema, List<String> columns, String keyField, Conversion[] conversions, String[] dataTypes) {
+        this.fingerprint = fingerprint;
+        this.schema = schema;
+        this.columns = Collections.unmodifiableList(columns);
+        this.columnsHash = columns.hashCode();
+        this.keyField = keyField;
+        this.conversions = conversions;
+        this.dataTypes = dataTypes;
+    }
+
+    // Compile a plan from the fields of the row schema in a Debezium JSON change event.
+    static SchemaPlan compile(JsonArray fieldsArray, long fingerprint, String keyField) {
+        List<String> columns = new ArrayList<>(fieldsArray.size());
+        Conversion[] conversions = new Conversion[fieldsArray.size()];
+        String[] dataTypes = new String[fieldsArray.size()];
+        int index = 0;
+        for (JsonElement object : fieldsArray) {
+            JsonElement type = object.getAsJsonObject().get("type");
+            JsonElement name = object.getAsJsonObject().get("name");
+            columns.add(object.getAsJsonObject().get("field").getAsString());
+            conversions[index] = conversionOf(type == null ? null : type.getAsString(), name == null ? null : name.getAsString());
+            dataTypes[index] = dataTypeOf(type == null ? null : type.getAsString(), name == null ? null : name.getAsString());
+            index++;
+        }
+        return new SchemaPlan(fingerprint, null, columns, keyField, conversions, dataTypes);
+    }
+
+    // Compile a plan from a Kafka Connect row schema.
+    static SchemaPlan compile(Schema rowSchema, String keyField) {
+        List<Field> fields = rowSchema.fields();
+        List<String> columns = new ArrayList<>(fields.size());
+        Conversion[] conversions = new Conversion[fields.size()];
+        String[] dataTypes = new String[fields.size()];
+        for (int index = 0; index < fields.size(); index++) {
+            Schema fieldSchema = fields.get(index).schema();
+            columns.add(fields.get(index).name());
+            conversions[index] = conversionOf(fieldSchema.type().getName(), fieldSchema.name());
+            dataTypes[index] = dataTypeOf(fieldSchema.type().getName(), fieldSchema.name());
+        }
+        return new SchemaPlan(0, rowSchema, columns, keyField, conversions, dataTypes);
+    }
+
+    // The names below are the temporal types of the Debezium connectors. Actual integers have a null name.
+    static Conversion conversionOf(String type, String name) {
+        if (type == null || name == null) {
+            return Conversion.NONE;
+        }
+        switch (type) {
+            case "int32":
+                return name.equals("io.debezium.time.Date") ? Conversion.DATE : Conversion.NONE;
+            case "int64":
+                switch (name) {
+                    case "io.debezium.time.MicroTime":
+                        return Conversion.MICRO_TIME;
+                    case "io.debezium.time.NanoTime":
+                        return Conversion.NANO_TIME;
+                    case "io.debezium.time.Timestamp":
+                        return Conversion.TIMESTAMP;
+                    case "io.debezium.time.MicroTimestamp":
+                        return Conversion.MICRO_TIMESTAMP;
+                    case "io.debezium.time.NanoTimestamp":
+                        return Conversion.NANO_TIMESTAMP;
+                    default:
+                        return Conversion.NONE;
+                }
+            case "string":
+                return name.equals("io.debezium.time.ZonedTimestamp") ? Conversion.ZONED_TIMESTAMP : Conversion.NONE;
+            default:
+                return Conversion.NONE;
+        }
+    }
+
+    static String dataTypeOf(String type, String name) {
+        if ("int32".equals(type)) {
+            return name == null ? "NUMERIC" : "ISO_DATE";
+        }
+        return null;
+    }
+
+    // Render the raw value of a column, as delivered in either a JSON or a Kafka Connect change event, as the text sent to SortCL.
+    public String render(int index, Object value) {
+        Conversion conversion = index < conversions.length ? conversions[index] : Conversion.NONE;
+        if (value instanceof JsonElement) {
+            if (!(value instanceof JsonPrimitive)) { // Nulls and nested values are sent as empty strings.
+                return "";
+            }
+            JsonPrimitive primitive = (JsonPrimitive) value;
+            if (conversion == Conversion.NONE) {
+                return primitive.getAsString();
+            }
+            return conversion == Conversion.ZONED_TIMESTAMP ? DateTimeConversionUtil.zonedTimestamp(primitive.getAsString()) : render(conversion, primitive.getAsLong());
+        }
+        if (value == null || value instanceof Struct || value instanceof Iterable || value instanceof Map) {
+            return "";
+        }
+        if (conversion == Conversion.NONE) {
+            return value.toString();
+        }
+        return conversion == Conversion.ZONED_TIMESTAMP ? DateTimeConversionUtil.zonedTimestamp(value.toString()) : render(conversion, ((Number) value).longValue());
+    }
+
+    private static String render(Conversion conversion, long value) {
+        switch (conversion) {
+            case DATE:
+                return DateTimeConversionUtil.date(value);
+            case MICRO_TIME:
+            case NANO_TIME:
+                return DateTimeConversionUtil.time(value, conversion.unit);
+            default:
+                return DateTimeConversionUtil.timestamp(value, conversion.unit);
+        }
+    }
+
+    // Encode the raw values of a row, as render would render them, into the bytes sent to SortCL, with the separator between values.
+    // Nothing is allocated for strings, numbers or temporal values.
+    public void encode(Object[] values, byte[] separator, RowBuffer out) {
+        for (int index = 0; index < values.length; index++) {
+            if (index > 0) {
+                out.put(separator);
+            }
+            encode(index, values[index], out);
+        }
+    }
+
+    private void encode(int index, Object value, RowBuffer out) {
+        Conversion conversion = index < conversions.length ? conversions[index] : Conversion.NONE;
+        if (value instanceof JsonElement) {
+            if (!(value instanceof JsonPrimitive)) { // Nulls and nested values are sent as empty strings.
+                return;
+            }
+            JsonPrimitive primitive = (JsonPrimitive) value;
+            if (conversion == Conversion.NONE) {
+                out.putString(primitive.getAsString()); // The text of the value as parsed, so no conversion is needed.
+            } else if (conversion == Conversion.ZONED_TIMESTAMP) {
+                DateTimeConversionUtil.writeZonedTimestamp(primitive.getAsString(), out);
+            } else {
+                encode(conversion, primitive.getAsLong(), out);
+            }
+            return;
+        }
+        if (value == null || value instanceof Struct || value instanceof Iterable || value instanceof Map) {
+            return;
+        }
+        if (conversion == Conversion.ZONED_TIMESTAMP) {
+            DateTimeConversionUtil.writeZonedTimestamp(value.toString(), out);
+        } else if (conversion != Conversion.NONE) {
+            encode(conversion, ((Number) value).longValue(), out);
+        } else if (value instanceof String) {
+            out.putString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.putLong(((Number) value).longValue());
+        } else {
+            out.putString(value.toString());
+        }
+    }
+
+    private static void encode(Conversion conversion, long value, RowBuffer out) {
+        switch (conversion) {
+            case DATE:
+                DateTimeConversionUtil.writeDate(value, out);
+                return;
+            case MICRO_TIME:
+            case NANO_TIME:
+                DateTimeConversionUtil.writeTime(value, conversion.unit, out);
+                return;
+            default:
+                DateTimeConversionUtil.writeTimestamp(value, conversion.unit, out);
+        }
+    }
+
+    // Set the SortCL data type of the fields of a new job.
+    public void applyDataTypes(List<SclField> fields) {
+        for (int index = 0; index < dataTypes.length && index < fields.size(); index++) {
+            if ("NUMERIC".equals(dataTypes[index])) {
+                fields.get(index).setDataType("NUMERIC");
+                fields.get(index).setPrecision(0);
+            } else if (dataTypes[index] != null) {
+                fields.get(index).setDataType(dataTypes[index]);
+            }
+        }
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public int getColumnsHash() {
+        return columnsHash;
+    }
+
+    public String getKeyField() {
+        return keyField;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Cache of compiled schema plans, one per source table. A cached plan is reused for as long as the schema of the change
+ * events matches the one it was compiled from, and is dropped when a structure change is detected for its table.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.kafka.connect.data.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SchemaPlanCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaPlanCache.class);
+    private final ConcurrentHashMap<String, SchemaPlan> plans = new ConcurrentHashMap<>();
+
+    // Return the plan for a table from a JSON change event, compiling it when the schema fingerprint is new or has changed.
+    // The key of the change event is only parsed when a plan is compiled.
+    public SchemaPlan get(String sourceTableIdentifier, long fingerprint, JsonObject changeEvent, String changeEventKey) {
+        SchemaPlan plan = plans.get(sourceTableIdentifier);
+        if (plan == null || plan.getSchema() != null || plan.getFingerprint() != fingerprint) {
+            String keyField = null;
+            if (changeEventKey != null) {
+                try {
+                    keyField = JsonParser.parseString(changeEventKey).getAsJsonObject().get("schema").getAsJsonObject().get("fields").getAsJsonArray().get(0).getAsJsonObject().get("field").getAsString();
+                } catch (JsonParseException | IllegalStateException | NullPointerException | IndexOutOfBoundsException e) {
+                    LOG.debug("Cannot parse primary key.");
+                }
+            }
+            plan = SchemaPlan.compile(changeEvent.get("schema").getAsJsonObject().get("fields").getAsJsonArray().get(0).getAsJsonObject().get("fields").getAsJsonArray(), fingerprint, keyField);
+            plans.put(sourceTableIdentifier, plan);
+        }
+        return plan;
+    }
+
+    // Return the plan for a table from a Kafka Connect change event. Debezium reuses the same schema objects until the table
+    // structure changes, so the plan is validated by identity.
+    public SchemaPlan get(String sourceTableIdentifier, Schema rowSchema, Schema keySchema) {
+        SchemaPlan plan = plans.get(sourceTableIdentifier);
+        if (plan == null || plan.getSchema() != rowSchema) {
+            String keyField = null;
+            if (keySchema != null && keySchema.type() == Schema.Type.STRUCT && !keySchema.fields().isEmpty()) {
+                keyField = keySchema.fields().get(0).name();
+            }
+            plan = SchemaPlan.compile(rowSchema, keyField);
+            plans.put(sourceTableIdentifier, plan);
+        }
+        return plan;
+    }
+
+    public void invalidate(String sourceTableIdentifier) {
+        plans.remove(sourceTableIdentifier);
+    }
+
+    public void invalidateAll() {
+        plans.clear();
+    }
+
+    // Fingerprint the schema part of a Debezium JSON change event, which precedes the payload, without parsing it. The payload is found
+    // by its key; in the schema, a column named payload only appears as a value ("field":"payload"), and quotes in values are escaped.
+    static long fingerprint(String changeEvent) {
+        int end = changeEvent.indexOf("\"payload\":");
+        if (end < 0) {
+            end = changeEvent.length();
+        }
+        long hash = 0xcbf29ce484222325L; // 64-bit FNV-1a.
+        for (int index = 0; index < end; index++) {
+            hash ^= changeEvent.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
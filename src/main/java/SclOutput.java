@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: The output of a SortCL job (stdout, with stderr redirected into it). The output is read as it arrives so the job never
+ * blocks on a full pipe, each line is written to the log, and the most recent lines are kept to report when the job fails. Reading
+ * is guarded by a lock that the output drainer only tries to take, so a thread waiting for a job to end never stalls the drainer.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SclOutput {
+    private static final Logger LOG = LoggerFactory.getLogger(SclOutput.class);
+    static final int RECENT_LINES = 100; // Number of output lines kept for error reports.
+
+    private final Process process;
+    private final InputStream stream;
+    private final String sourceTableIdentifier;
+    private final byte[] buffer = new byte[8192];
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private final ArrayDeque<String> recentLines = new ArrayDeque<>(RECENT_LINES); // Guarded by itself, as it is read while the job runs.
+    private final ReentrantLock readLock = new ReentrantLock(); // Held while reading the output.
+    private volatile boolean ended;
+
+    SclOutput(Process process, String sourceTableIdentifier) {
+        this.process = process;
+        this.stream = process.getInputStream();
+        this.sourceTableIdentifier = sourceTableIdentifier;
+    }
+
+    // Read whatever output is available without blocking. Returns false once the end of the output has been reached. The output is
+    // skipped if another thread is reading it, which it then does until the job ends.
+    public boolean drain() throws IOException {
+        if (!readLock.tryLock()) {
+            return !ended;
+        }
+        try {
+            while (!ended) {
+                int available = stream.available();
+                if (available <= 0) {
+                    if (!process.isAlive()) { // Nothing more will be written, so reading cannot block.
+                        drainToEnd();
+                    }
+                    break;
+                }
+                read(Math.min(available, buffer.length));
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return !ended;
+    }
+
+    // Read the remaining output until the job closes it, waiting for the job if necessary.
+    public void drainToEnd() throws IOException {
+        readLock.lock();
+        try {
+            while (!ended) {
+                read(buffer.length);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void read(int length) throws IOException {
+        int count = stream.read(buffer, 0, length);
+        if (count < 0) {
+            ended = true;
+            if (partialLine.size() > 0) {
+                endLine();
+            }
+            return;
+        }
+        for (int index = 0; index < count; index++) {
+            if (buffer[index] == '\n') {
+                endLine();
+            } else if (buffer[index] != '\r') {
+                partialLine.write(buffer[index]);
+            }
+        }
+    }
+
+    private void endLine() {
+        String line = new String(partialLine.toByteArray(), Charset.defaultCharset());
+        partialLine.reset();
+        LOG.info("SortCL job for table '{}': {}", sourceTableIdentifier, line);
+        synchronized (recentLines) {
+            if (recentLines.size() == RECENT_LINES) {
+                recentLines.removeFirst();
+            }
+            recentLines.addLast(line);
+        }
+    }
+
+    public List<String> getRecentLines() {
+        synchronized (recentLines) {
+            return new ArrayList<>(recentLines);
+        }
+    }
+
+    public void close() throws IOException {
+        stream.close();
+    }
+}
@@ -7,18 +7,27 @@
  *     devonk
  */
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SclScript {
+    private static final Logger LOG = LoggerFactory.getLogger(SclScript.class);
+    private static final AtomicLong PENDING_SEQUENCE = new AtomicLong(); // Orders the first unflushed rows of all jobs.
+    static final int STDIN_BUFFER_SIZE = 64 * 1024; // Rows are written to the pipe once this many bytes are held, so a batch reaches it in as few writes as possible.
     String sourceTableIdentifier;
     String targetTableIdentifier;
     String table;
-    String key;
+    ScriptKey key;
     String schema;
     String DSN;
     String operation;
@@ -27,9 +36,24 @@ public class SclScript {
     String postfix;
     ArrayList<SclField> fields = new ArrayList<>();
     Process process;
-    BufferedWriter stdin;
-    BufferedReader stderr;
-    BufferedReader stdout;
+    OutputStream stdin; // The pipe to sortcl, once it is running.
+    Future<Process> spawn; // Set while sortcl is being started; rows are held until it is running.
+    final RowBuffer rows = new RowBuffer(); // Rows encoded for the job and not yet written to the pipe or the sink.
+    FileTargetSink sink; // Writes the rows instead of a sortcl process, when the job has no rules to apply; there is then no process.
+    volatile SclOutput output; // Output of the job, read by the output drainer.
+    List<String> classifiedValues; // Values of the first row, which the columns were classified from.
+    volatile boolean stale; // Set when the job must be replaced because its columns would now be classified differently.
+    boolean closed;
+    volatile long lastUsedNanos; // When a row was last written to the job; 0 until the first row.
+    long pendingRows; // Rows written to stdin since the last flush.
+    long pendingBytes; // Bytes written to stdin since the last flush.
+    long oldestPendingNanos; // When the first row since the last flush was written.
+    long oldestPendingSequence; // Sequence of the first row since the last flush, or 0 once every row written has been flushed.
+    String keyField; // Key column of the table, or null if unknown.
+    final long startedNanos = System.nanoTime();
+    long stagedRows; // Rows written to a staging job, which are merged into the target when it ends.
+    long lastSequence; // Sequence of the last row written to a staging job.
+    TableMetrics metrics; // Metrics of the source table; null if not measured.
 
     // Constructor for just targeting a database.
     SclScript(String sourceTable, String sourceSchema, String targetSchema, String DSN, ArrayList<String> fields, String operation, String postfixTableString) {
@@ -146,11 +170,201 @@ public class SclScript {
         return process;
     }
 
+    // Hold the rows written to the job until sortcl has been started.
+    public void setSpawn(Future<Process> spawn) {
+        this.spawn = spawn;
+    }
+
+    // Once sortcl is running, write the rows held so far and further rows to its stdin. Unless told to wait, nothing is done while
+    // sortcl is still starting.
+    private void attachProcess(boolean wait) throws IOException {
+        if (spawn == null || (!wait && !spawn.isDone())) {
+            return;
+        }
+        Process started;
+        try {
+            started = spawn.get();
+        } catch (ExecutionException e) {
+            throw new IOException("sortcl could not be started", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sortcl was being started");
+        }
+        spawn = null;
+        setProcess(started);
+    }
+
     public void setProcess(Process process) {
         this.process = process;
-        this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
-        this.stderr = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-        this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        this.stdin = process.getOutputStream();
+        this.output = new SclOutput(process, sourceTableIdentifier); // stderr is redirected to stdout.
+    }
+
+    // Write a row to the job, unless the job has been closed since it was looked up. Returns false if it has, in which case a new job
+    // is needed for the row. The whole row is written while holding the job, so it cannot be closed part way through a row.
+    public synchronized boolean writeRow(ChangeRow row) throws IOException {
+        if (closed) {
+            return false;
+        }
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        int start = rows.length();
+        row.encode(sink != null ? sink.getSeparator() : RowBuffer.TAB, rows);
+        if (isStaging()) { // Tag the row with its operation and order for the merge.
+            lastSequence = StagingMerge.nextSequence();
+            rows.put(RowBuffer.TAB);
+            rows.putString(row.getOperation());
+            rows.put(RowBuffer.TAB);
+            rows.putLong(lastSequence);
+            stagedRows++;
+        }
+        rows.put(RowBuffer.LINE_SEPARATOR);
+        int rowLength = rows.length() - start;
+        long renderedNanos = metrics != null ? System.nanoTime() : 0;
+        endRow(rowLength);
+        if (metrics != null) {
+            metrics.rowWritten(rowLength, row.getSourceTimestamp(), startNanos, renderedNanos);
+        }
+        lastUsedNanos = System.nanoTime();
+        return true;
+    }
+
+    // Wait for the sortcl process of a closed job to exit, so that a job replacing it cannot write to the target ahead of it.
+    public void awaitEnd() throws InterruptedException {
+        if (process != null) {
+            process.waitFor();
+        }
+    }
+
+    // Hand the row just encoded to the sink, or write the rows held to stdin once there are enough of them, and account for the row
+    // against the flush policy.
+    private void endRow(int rowLength) throws IOException {
+        if (sink != null) {
+            sink.writeRow(rows);
+        } else {
+            attachProcess(false);
+            if (stdin != null && rows.length() >= STDIN_BUFFER_SIZE) {
+                rows.writeTo(stdin);
+            }
+        }
+        if (pendingRows == 0) {
+            oldestPendingNanos = System.nanoTime();
+            oldestPendingSequence = PENDING_SEQUENCE.incrementAndGet();
+        }
+        pendingRows++;
+        pendingBytes += rowLength;
+    }
+
+    public synchronized boolean isFlushDue(FlushPolicy policy) {
+        return pendingRows > 0 && policy.isFlushDue(pendingRows, pendingBytes);
+    }
+
+    public synchronized boolean isFlushOverdue(FlushPolicy policy, long nowNanos) {
+        return pendingRows > 0 && policy.isFlushOverdue(oldestPendingNanos, nowNanos);
+    }
+
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        boolean flushing = pendingRows > 0;
+        pendingRows = 0;
+        pendingBytes = 0;
+        if (sink != null) {
+            sink.flush();
+        } else {
+            attachProcess(true); // Rows must reach sortcl before their batch is marked as processed.
+            rows.writeTo(stdin);
+            stdin.flush();
+        }
+        oldestPendingSequence = 0;
+        if (metrics != null && flushing) {
+            metrics.flushed(startNanos);
+        }
+    }
+
+    // Send the remaining rows and close stdin, which lets the job finish.
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pendingRows = 0;
+        pendingBytes = 0;
+        if (sink != null) {
+            sink.close();
+        } else {
+            attachProcess(true);
+            rows.writeTo(stdin);
+            stdin.close();
+        }
+        oldestPendingSequence = 0;
+    }
+
+    // The sequence given to the last job to start holding unflushed rows. Once no job has an oldest unflushed row at or before it,
+    // every row written up to now has been flushed.
+    static long currentPendingSequence() {
+        return PENDING_SEQUENCE.get();
+    }
+
+    public synchronized long getOldestPendingSequence() {
+        return oldestPendingSequence;
+    }
+
+    public List<String> getClassifiedValues() {
+        return classifiedValues;
+    }
+
+    public void setClassifiedValues(List<String> classifiedValues) {
+        this.classifiedValues = classifiedValues;
+    }
+
+    public long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    // True for the job of a table whose changes are staged and merged in micro-batches.
+    public boolean isStaging() {
+        return StagingMerge.OPERATION.equals(operation);
+    }
+
+    public synchronized long getStagedRows() {
+        return stagedRows;
+    }
+
+    // The rows staged by the job, once; a job ended by more than one thread is merged only once.
+    public synchronized long takeStagedRows() {
+        long rows = stagedRows;
+        stagedRows = 0;
+        return rows;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public void setMetrics(TableMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getStartedNanos() {
+        return startedNanos;
+    }
+
+    public String getKeyField() {
+        return keyField;
+    }
+
+    public void setKeyField(String keyField) {
+        this.keyField = keyField;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void markStale() {
+        this.stale = true;
     }
 
     public String getOperation() {
@@ -161,12 +375,16 @@ public class SclScript {
         this.operation = operation;
     }
 
-    public BufferedReader getStderr() {
-        return stderr;
+    public FileTargetSink getSink() {
+        return sink;
+    }
+
+    public void setSink(FileTargetSink sink) {
+        this.sink = sink;
     }
 
-    public BufferedReader getStdout() {
-        return stdout;
+    public SclOutput getOutput() {
+        return output;
     }
 
     public String getSchema() {
@@ -201,15 +419,15 @@ public class SclScript {
         this.postfix = postfix;
     }
 
-    public BufferedWriter getStdin() {
+    public OutputStream getStdin() {
         return stdin;
     }
 
-    public String getKey() {
+    public ScriptKey getKey() {
         return key;
     }
 
-    public void setKey(String key) {
+    public void setKey(ScriptKey key) {
         this.key = key;
     }
 }
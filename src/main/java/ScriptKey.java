@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Key identifying a SortCL job in the map of jobs: the operation, the source table, and the signature of the columns in the change event.
+ * The hash is computed once, so routing a change event to its job is a single hash lookup.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import java.util.List;
+
+public final class ScriptKey {
+    private final String operation;
+    private final String sourceTableIdentifier;
+    private final List<String> columns;
+    private final int hash;
+
+    // The key keeps a reference to the list of columns; the list must not be changed while the key is in use.
+    ScriptKey(String operation, String sourceTableIdentifier, List<String> columns) {
+        this(operation, sourceTableIdentifier, columns, columns.hashCode());
+    }
+
+    // Use a column signature hash computed in advance, which must equal columns.hashCode().
+    ScriptKey(String operation, String sourceTableIdentifier, List<String> columns, int columnsHash) {
+        this.operation = operation;
+        this.sourceTableIdentifier = sourceTableIdentifier;
+        this.columns = columns;
+        this.hash = 31 * (31 * operation.hashCode() + sourceTableIdentifier.hashCode()) + columnsHash;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getSourceTableIdentifier() {
+        return sourceTableIdentifier;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScriptKey)) {
+            return false;
+        }
+        ScriptKey other = (ScriptKey) o;
+        return hash == other.hash && operation.equals(other.operation) && sourceTableIdentifier.equals(other.sourceTableIdentifier) && columns.equals(other.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return operation + ":" + sourceTableIdentifier + columns;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Starts SortCL jobs in the background. The spec of a new job is written to a temporary file and sortcl is started on one
+ * of a few spawner threads, so the thread handling change events goes on to other rows meanwhile, and the jobs of several new tables
+ * start in parallel. The job holds its rows until sortcl is running.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ScriptSpawner {
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptSpawner.class);
+    static final String DEFAULT_EXECUTABLE = "sortcl";
+    static final int DEFAULT_THREADS = 4;
+
+    private final String executable;
+    private final ExecutorService executor; // Null when jobs are started on the calling thread.
+    private final LongAdder spawns = new LongAdder();
+    private final LongAdder spawnNanos = new LongAdder(); // From asking for a job until sortcl is running, including waiting for a spawner thread.
+    private final AtomicLong maxSpawnNanos = new AtomicLong();
+
+    ScriptSpawner(String executable, int threads) {
+        this.executable = executable;
+        if (threads > 0) {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "sortcl-spawner-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    static ScriptSpawner fromProperties(Properties props) {
+        String executable = props.getProperty(Main.SORTCL_EXECUTABLE_PROPERTY_NAME);
+        int threads = DEFAULT_THREADS;
+        String threadsValue = props.getProperty(Main.SORTCL_SPAWN_THREADS_PROPERTY_NAME);
+        if (threadsValue != null && !threadsValue.trim().isEmpty()) {
+            try {
+                threads = Math.max(0, Integer.parseInt(threadsValue.trim()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value '{}' for property {}. {} spawner threads will be used.", threadsValue, Main.SORTCL_SPAWN_THREADS_PROPERTY_NAME, DEFAULT_THREADS);
+            }
+        }
+        return new ScriptSpawner(executable == null || executable.trim().isEmpty() ? DEFAULT_EXECUTABLE : executable.trim(), threads);
+    }
+
+    // Start a job with the given spec. With no spawner threads, the job is started before this returns.
+    Future<Process> spawn(String spec, String table) {
+        long requestedNanos = System.nanoTime();
+        FutureTask<Process> task = new FutureTask<>(() -> {
+            Process process = start(spec, table);
+            long latency = System.nanoTime() - requestedNanos;
+            spawns.increment();
+            spawnNanos.add(latency);
+            maxSpawnNanos.accumulateAndGet(latency, Math::max);
+            return process;
+        });
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    private Process start(String spec, String table) throws IOException {
+        try {
+            File specFile = File.createTempFile("sortcl", ".tmp");
+            specFile.deleteOnExit();
+            try (Writer writer = new FileWriter(specFile)) {
+                writer.write(spec);
+            }
+            return new ProcessBuilder(executable, "/SPEC=" + specFile.getAbsolutePath()).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            LOG.error("An error occurred when starting sortcl process for table '{}'.", table, e);
+            throw e;
+        }
+    }
+
+    public long getSpawns() {
+        return spawns.sum();
+    }
+
+    public long getSpawnNanos() {
+        return spawnNanos.sum();
+    }
+
+    public long getMaxSpawnNanos() {
+        return maxSpawnNanos.get();
+    }
+
+    public String getExecutable() {
+        return executable;
+    }
+}
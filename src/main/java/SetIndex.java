@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Hash index over the lines of a set file. The file is memory-mapped and the index only holds the position of each line,
+ * so large sets are looked up in constant time without being copied onto the heap as strings. The index is built on first use and
+ * shared by every data class that refers to the same version of a set file; a file whose size or modification time has changed gets a
+ * new index. An optional Bloom filter lets most values not in the set be rejected without touching the file.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SetIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(SetIndex.class);
+    private static final ConcurrentHashMap<Path, SetIndex> INDEXES = new ConcurrentHashMap<>(); // Current index of each set file.
+    static final int BLOOM_FILTER_BITS_PER_ENTRY = 10; // About a 1% false positive rate with the hashes below.
+    static final int BLOOM_FILTER_HASHES = 7;
+    static volatile boolean bloomFilterEnabled; // Set from the configuration before the first lookup.
+
+    private final Path path;
+    private final long fileSize; // Size and modification time of the file the index is for, or -1 if it could not be read.
+    private final long fileModified;
+    private volatile boolean loaded;
+    private long mappedModified; // Modification time of the file when it was mapped.
+    private volatile boolean failed; // True if the file changed while it was mapped.
+    private boolean indexed; // True once the table has been built, or restored from a library snapshot.
+    private MappedByteBuffer buffer;
+    private int[] offsets; // Start of the line in each slot of the table, or -1 for an empty slot.
+    private int[] lengths; // Length of the line in each slot, in bytes.
+    private int[] hashes; // Hash of the line in each slot.
+    private int mask;
+    private long[] bloomFilter; // Null when the Bloom filter is disabled.
+    private long bloomFilterBits;
+    private int size;
+
+    private SetIndex(Path path, long fileSize, long fileModified) {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+    }
+
+    // The shared index of a set file as it is now. An index made before the file changed is replaced; matchers already using it keep
+    // it. Nothing is read until the first lookup.
+    static SetIndex forPath(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        long fileSize = sizeOf(key);
+        long fileModified = modifiedTimeOf(key);
+        return INDEXES.compute(key, (file, index) -> index != null && index.fileSize == fileSize && index.fileModified == fileModified ? index
+                : new SetIndex(file, fileSize, fileModified));
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long modifiedTimeOf(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Forget the indexes of set files that are no longer used by the libraries, once they have been loaded again.
+    static void retain(Collection<String> setPaths) {
+        Set<Path> used = new HashSet<>();
+        for (String setPath : setPaths) {
+            try {
+                used.add(Paths.get(setPath).toAbsolutePath().normalize());
+            } catch (InvalidPathException e) {
+                LOG.debug("Invalid set file path '{}'.", setPath);
+            }
+        }
+        INDEXES.keySet().retainAll(used);
+    }
+
+    // True if the value is one of the lines of the set file.
+    public boolean contains(String value) {
+        if (!loaded) {
+            load();
+        }
+        if (size == 0 || failed) {
+            return false;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        if (bloomFilter != null && !mightContain(hash)) {
+            return false;
+        }
+        if (isChangedSinceMapped()) { // Reading past the end of a truncated file would crash the JVM.
+            failed = true;
+            LOG.warn("Set file '{}' changed while in use. No values will match it until the libraries are loaded again.", path);
+            return false;
+        }
+        for (int slot = hash & mask; offsets[slot] >= 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && equalsLine(offsets[slot], lengths[slot], bytes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Columns are only classified once, so checking the file on each lookup that reads it costs little.
+    private boolean isChangedSinceMapped() {
+        return sizeOf(path) != buffer.capacity() || modifiedTimeOf(path) != mappedModified;
+    }
+
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Set file is larger than 2 GB");
+            }
+            mappedModified = modifiedTimeOf(path);
+            // A file changed since the index was made has to be indexed again, even if a table was restored from a snapshot.
+            if (channel.size() != fileSize || mappedModified != fileModified) {
+                indexed = false;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!indexed) {
+                index();
+                indexed = true;
+                LOG.info("Indexed {} entries of set file '{}'.", size, path);
+                LibrarySnapshot.setFileIndexed();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read set file '{}': {}. No values will match it.", path, e.getMessage());
+            size = 0;
+            indexed = true;
+        }
+        loaded = true;
+    }
+
+    // Lines end with \n, \r or \r\n, as read by Files.readAllLines(); a final line terminator does not start another line.
+    private void index() {
+        int limit = buffer.limit();
+        int lines = 0;
+        for (int position = 0; position < limit; position++) {
+            byte b = buffer.get(position);
+            if (b == '\n' || (b == '\r' && (position + 1 == limit || buffer.get(position + 1) != '\n'))) {
+                lines++;
+            }
+        }
+        if (limit > 0 && buffer.get(limit - 1) != '\n' && buffer.get(limit - 1) != '\r') {
+            lines++;
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, lines * 2 - 1)) << 1; // At most half full.
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(offsets, -1);
+        if (bloomFilterEnabled) {
+            bloomFilterBits = Math.max(64, (long) lines * BLOOM_FILTER_BITS_PER_ENTRY);
+            bloomFilter = new long[(int) ((bloomFilterBits + 63) / 64)];
+        }
+        int start = 0;
+        for (int position = 0; position < limit; position++) {
+            byte b = buffer.get(position);
+            if (b == '\n' || b == '\r') {
+                add(start, position - start);
+                if (b == '\r' && position + 1 < limit && buffer.get(position + 1) == '\n') {
+                    position++;
+                }
+                start = position + 1;
+            }
+        }
+        if (start < limit) {
+            add(start, limit - start);
+        }
+    }
+
+    private void add(int offset, int length) {
+        int hash = 0x811c9dc5; // 32-bit FNV-1a, as in hash(byte[]).
+        for (int position = offset; position < offset + length; position++) {
+            hash = (hash ^ (buffer.get(position) & 0xff)) * 0x01000193;
+        }
+        int slot = hash & mask;
+        for (; offsets[slot] >= 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && lengths[slot] == length && equalsLine(offsets[slot], length, offset)) {
+                return; // Duplicate line.
+            }
+        }
+        offsets[slot] = offset;
+        lengths[slot] = length;
+        hashes[slot] = hash;
+        size++;
+        if (bloomFilter != null) {
+            for (int index = 0; index < BLOOM_FILTER_HASHES; index++) {
+                long bit = bloomFilterBit(hash, index);
+                bloomFilter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    private static int hash(byte[] bytes) {
+        int hash = 0x811c9dc5;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private boolean mightContain(int hash) {
+        for (int index = 0; index < BLOOM_FILTER_HASHES; index++) {
+            long bit = bloomFilterBit(hash, index);
+            if ((bloomFilter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Double hashing: the second hash is derived from the first by a multiplicative mix.
+    private long bloomFilterBit(int hash, int index) {
+        int second = (hash * 0x9e3779b9) >>> 16 | 1;
+        return ((hash & 0xffffffffL) + (long) index * second) % bloomFilterBits;
+    }
+
+    private boolean equalsLine(int offset, int length, byte[] bytes) {
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int index = 0; index < length; index++) {
+            if (buffer.get(offset + index) != bytes[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsLine(int offset, int length, int otherOffset) {
+        for (int index = 0; index < length; index++) {
+            if (buffer.get(offset + index) != buffer.get(otherOffset + index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True once the table has been built or restored, so it can be written to a library snapshot without reading the file.
+    synchronized boolean isIndexed() {
+        return indexed && !failed;
+    }
+
+    // Write the table to a library snapshot. Only called once it is indexed.
+    synchronized void write(DataOutputStream output) throws IOException {
+        output.writeInt(size);
+        output.writeInt(size == 0 ? 0 : offsets.length);
+        if (size > 0) {
+            writeInts(output, offsets);
+            writeInts(output, lengths);
+            writeInts(output, hashes);
+        }
+        output.writeBoolean(bloomFilter != null && size > 0);
+        if (bloomFilter != null && size > 0) {
+            output.writeLong(bloomFilterBits);
+            output.writeInt(bloomFilter.length);
+            for (long word : bloomFilter) {
+                output.writeLong(word);
+            }
+        }
+    }
+
+    // Restore the table of a set file from a library snapshot. The file itself is mapped on first use, as usual.
+    static void read(Path path, DataInputStream input) throws IOException {
+        SetIndex index = forPath(path);
+        synchronized (index) {
+            int size = input.readInt();
+            int capacity = input.readInt();
+            int[] offsets = new int[Math.max(capacity, 1)];
+            int[] lengths = new int[offsets.length];
+            int[] hashes = new int[offsets.length];
+            Arrays.fill(offsets, -1);
+            if (capacity > 0) {
+                readInts(input, offsets);
+                readInts(input, lengths);
+                readInts(input, hashes);
+            }
+            long[] bloomFilter = null;
+            long bloomFilterBits = 0;
+            if (input.readBoolean()) {
+                bloomFilterBits = input.readLong();
+                bloomFilter = new long[input.readInt()];
+                for (int word = 0; word < bloomFilter.length; word++) {
+                    bloomFilter[word] = input.readLong();
+                }
+            }
+            if (index.indexed) { // Already in use.
+                return;
+            }
+            index.size = size;
+            index.offsets = offsets;
+            index.lengths = lengths;
+            index.hashes = hashes;
+            index.mask = offsets.length - 1;
+            index.bloomFilter = bloomFilter;
+            index.bloomFilterBits = bloomFilterBits;
+            index.indexed = true;
+        }
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(values.length * 4);
+        bytes.asIntBuffer().put(values);
+        output.write(bytes.array());
+    }
+
+    private static void readInts(DataInputStream input, int[] values) throws IOException {
+        byte[] bytes = new byte[values.length * 4];
+        input.readFully(bytes);
+        ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+    }
+
+    public int size() {
+        if (!loaded) {
+            load();
+        }
+        return size;
+    }
+}
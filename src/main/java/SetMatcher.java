@@ -9,27 +9,26 @@
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 
 public class SetMatcher implements DataMatcher {
 
-    List<String> entries;
+    SetIndex index; // Shared with every other matcher of the same set file, and only built when first used.
 
     SetMatcher(String setPath) throws IOException, URISyntaxException {
-        this.entries = Files.readAllLines(Paths.get(new URI(new File(setPath).toURI().toString())));
+        Path path = Paths.get(new File(setPath).toURI());
+        if (!Files.isReadable(path)) {
+            throw new NoSuchFileException(setPath);
+        }
+        this.index = SetIndex.forPath(path);
     }
 
     Boolean findMatch(String data) {
-        for (String entry : entries) {
-            if (data.equals(entry)) {
-                return true;
-            }
-        }
-        return false;
+        return index.contains(data);
     }
 
     @Override
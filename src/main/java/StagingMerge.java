@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Applies the changes to selected tables in micro-batches, instead of one /UPDATE or /DELETE per row. Inserts, updates and
+ * deletes of such a table go to a single SortCL job, which appends them, with their rules applied and tagged with their operation and
+ * order, to a staging table next to the target. When the job ends, the batch is merged into the target with a few set-based
+ * statements over JDBC: the target rows of every staged key are deleted, and the latest image of each key that was not deleted is
+ * inserted. The merged rows are then deleted from the staging table, all in one transaction. Only rows staged up to the last row of
+ * the ended job are merged, so the job replacing it can stage rows meanwhile, and the merges of a table are made one at a time.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StagingMerge {
+    private static final Logger LOG = LoggerFactory.getLogger(StagingMerge.class);
+    static final String OPERATION = "m"; // Operation of the staging job of a table, which takes all of its changes.
+    static final String OPERATION_COLUMN = "RIPCURRENT_OP";
+    static final String SEQUENCE_COLUMN = "RIPCURRENT_SEQ";
+    static final String DEFAULT_STAGING_SUFFIX = "_STAGING";
+    static final long DEFAULT_BATCH_ROWS = 10000;
+    static final long DEFAULT_BATCH_MILLIS = 5000;
+    // Orders staged rows, also across restarts, as rows left in a staging table by an earlier run are merged with the next batch.
+    private static final AtomicLong SEQUENCE = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private final Set<String> tables; // Source tables, as schema.table, applied in micro-batches; empty for every table.
+    private final String jdbcUrl;
+    private final String jdbcUser;
+    private final String jdbcPassword;
+    private final String stagingSuffix;
+    private final long batchRows; // Merge once the staging job has had this many rows; 0 for no limit.
+    private final long batchMillis; // Merge once the staging job has been running this long; 0 for no limit.
+    private final ConcurrentHashMap<String, Object> mergeLocks = new ConcurrentHashMap<>(); // Per target table.
+    private final AtomicLong batchesMerged = new AtomicLong();
+    private final AtomicLong rowsMerged = new AtomicLong();
+    private ScheduledExecutorService merger; // Null until started, and when there is no time limit.
+
+    StagingMerge(Set<String> tables, String jdbcUrl, String jdbcUser, String jdbcPassword, String stagingSuffix, long batchRows, long batchMillis) {
+        this.tables = tables;
+        this.jdbcUrl = jdbcUrl;
+        this.jdbcUser = jdbcUser;
+        this.jdbcPassword = jdbcPassword;
+        this.stagingSuffix = stagingSuffix;
+        this.batchRows = batchRows;
+        this.batchMillis = batchMillis;
+    }
+
+    // Null unless tables to merge and a JDBC URL are set, and changes are replicated to a DSN.
+    static StagingMerge fromProperties(Main m, Properties props) {
+        String tablesValue = props.getProperty(Main.MERGE_TABLES_PROPERTY_NAME);
+        if (tablesValue == null || tablesValue.trim().isEmpty()) {
+            return null;
+        }
+        if (m.getDSN() == null) {
+            LOG.warn("Updates and deletes are only replicated when a DSN is set. {} will be ignored.", Main.MERGE_TABLES_PROPERTY_NAME);
+            return null;
+        }
+        String jdbcUrl = props.getProperty(Main.MERGE_JDBC_URL_PROPERTY_NAME);
+        if (jdbcUrl == null || jdbcUrl.trim().isEmpty()) {
+            LOG.warn("{} property not set. Staged changes cannot be merged, so {} will be ignored.", Main.MERGE_JDBC_URL_PROPERTY_NAME, Main.MERGE_TABLES_PROPERTY_NAME);
+            return null;
+        }
+        Set<String> tables = new HashSet<>();
+        for (String table : tablesValue.split(",")) {
+            if (!table.trim().isEmpty() && !table.trim().equals("*")) {
+                tables.add(table.trim());
+            }
+        }
+        String stagingSuffix = props.getProperty(Main.MERGE_STAGING_SUFFIX_PROPERTY_NAME, DEFAULT_STAGING_SUFFIX);
+        long batchRows = parseLimit(props, Main.MERGE_BATCH_ROWS_PROPERTY_NAME, DEFAULT_BATCH_ROWS);
+        long batchMillis = parseLimit(props, Main.MERGE_BATCH_MS_PROPERTY_NAME, DEFAULT_BATCH_MILLIS);
+        LOG.info("Merging the changes to {} from staging tables with the suffix '{}', in batches of up to {} rows and {} ms.", tables.isEmpty() ? "every table" : tables, stagingSuffix, batchRows, batchMillis);
+        return new StagingMerge(tables, jdbcUrl.trim(), props.getProperty(Main.MERGE_JDBC_USER_PROPERTY_NAME), props.getProperty(Main.MERGE_JDBC_PASSWORD_PROPERTY_NAME), stagingSuffix, batchRows, batchMillis);
+    }
+
+    private static long parseLimit(Properties props, String propertyName, long defaultValue) {
+        String value = props.getProperty(propertyName);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value '{}' for property {}. The default of {} will be used.", value, propertyName, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    // Start the merger thread, which ends staging jobs that have been running for the batch time, on behalf of tables that have gone
+    // quiet. Does nothing when there is no time limit.
+    void start(Main m) {
+        if (batchMillis == 0) {
+            return;
+        }
+        merger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "staging-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, batchMillis / 2);
+        merger.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (SclScript script : Main.scripts.get().values()) {
+                if (script.isStaging() && script.getStagedRows() > 0 && now - script.getStartedNanos() >= TimeUnit.MILLISECONDS.toNanos(batchMillis)) {
+                    Main.retireSortCLScript(script, m);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isMergeTable(String sourceTableIdentifier) {
+        return tables.isEmpty() || tables.contains(sourceTableIdentifier);
+    }
+
+    // True when the staging job has had enough rows to be ended and merged by the thread writing to it.
+    public boolean isBatchDue(SclScript script) {
+        return batchRows > 0 && script.getStagedRows() >= batchRows;
+    }
+
+    static long nextSequence() {
+        return SEQUENCE.incrementAndGet();
+    }
+
+    // Add the operation and sequence columns to the fields of a staging job, after the columns of the table.
+    static void addStagingFields(List<SclField> fields) {
+        fields.add(new SclField(OPERATION_COLUMN));
+        SclField sequence = new SclField(SEQUENCE_COLUMN);
+        sequence.setDataType("NUMERIC");
+        sequence.setPrecision(0);
+        fields.add(sequence);
+    }
+
+    static boolean isStagingField(SclField field) {
+        return field.getName().equals(OPERATION_COLUMN) || field.getName().equals(SEQUENCE_COLUMN);
+    }
+
+    public String stagingTableIdentifier(SclScript script) {
+        return script.getTargetTableIdentifier() + stagingSuffix;
+    }
+
+    // Merge the rows staged by an ended job into its target table. Without a known key, the first column is the key, as for /UPDATE
+    // and /DELETE.
+    public void merge(SclScript script, String keyField) throws SQLException {
+        String target = script.getTargetTableIdentifier();
+        long startNanos = System.nanoTime();
+        int staged;
+        synchronized (mergeLocks.computeIfAbsent(target, table -> new Object())) {
+            staged = execute(script, keyField);
+        }
+        batchesMerged.incrementAndGet();
+        rowsMerged.addAndGet(Math.max(0, staged));
+        LOG.info("Merged {} staged rows into table '{}' in {} ms.", staged, target, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    // The statements of a merge, with the identifiers quoted with the quote string of the database.
+    List<String> mergeStatements(SclScript script, String keyField, String quote) {
+        String target = quoteTable(script.getTargetTableIdentifier(), quote);
+        String staging = quoteTable(stagingTableIdentifier(script), quote);
+        StringBuilder columns = new StringBuilder();
+        for (SclField field : script.getFields()) {
+            if (!isStagingField(field)) {
+                columns.append(columns.length() == 0 ? "" : ", ").append(quoteName(field.getName(), quote));
+            }
+        }
+        String key = quoteName(keyField != null ? keyField : script.getFields().get(0).getName(), quote);
+        String operation = quoteName(OPERATION_COLUMN, quote);
+        String sequence = quoteName(SEQUENCE_COLUMN, quote);
+        String batch = sequence + " <= " + script.getLastSequence();
+        return Arrays.asList(
+                "DELETE FROM " + target + " WHERE " + key + " IN (SELECT " + key + " FROM " + staging + " WHERE " + batch + ")",
+                "INSERT INTO " + target + " (" + columns + ") SELECT " + columns + " FROM " + staging + " s WHERE s." + operation + " <> 'd'"
+                        + " AND s." + sequence + " = (SELECT MAX(l." + sequence + ") FROM " + staging + " l WHERE l." + key + " = s." + key + " AND l." + batch + ")",
+                "DELETE FROM " + staging + " WHERE " + batch);
+    }
+
+    // Quote each part of a table identifier such as schema.table.
+    static String quoteTable(String identifier, String quote) {
+        StringBuilder quoted = new StringBuilder();
+        for (String part : identifier.split("\\.", -1)) {
+            quoted.append(quoted.length() == 0 ? "" : ".").append(quoteName(part, quote));
+        }
+        return quoted.toString();
+    }
+
+    // Quote a single identifier, doubling any quote in it. A quote string of a space means the database does not support quoting.
+    static String quoteName(String name, String quote) {
+        if (quote == null || quote.trim().isEmpty()) {
+            return name;
+        }
+        return quote + name.replace(quote, quote + quote) + quote;
+    }
+
+    // Run the statements of a merge in one transaction. Returns the number of staged rows deleted by the last.
+    private int execute(SclScript script, String keyField) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, jdbcUser, jdbcPassword); Statement statement = connection.createStatement()) {
+            List<String> statements = mergeStatements(script, keyField, connection.getMetaData().getIdentifierQuoteString());
+            connection.setAutoCommit(false);
+            try {
+                for (String sql : statements) {
+                    LOG.debug(sql);
+                    statement.addBatch(sql);
+                }
+                int[] counts = statement.executeBatch();
+                connection.commit();
+                return counts[counts.length - 1];
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    public long getBatchesMerged() {
+        return batchesMerged.get();
+    }
+
+    public long getRowsMerged() {
+        return rowsMerged.get();
+    }
+
+    public long getBatchRows() {
+        return batchRows;
+    }
+
+    public long getBatchMillis() {
+        return batchMillis;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Replication metrics of one source table: change events received, rows and bytes written to its SortCL jobs, flushes of
+ * their stdin, and the lag of the last row written behind the time it was changed in the source database (payload.source.ts_ms), with a
+ * histogram of that lag over every row. The histogram is coarser than those of the stages, and only made once the first row with a
+ * source timestamp is written, as there may be thousands of tables.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TableMetrics implements TableMetricsMBean {
+    static final int SUB_BUCKET_BITS = 3; // 328 buckets in all; the lag is within about 12%, and in whole ms anyway.
+
+    private final String table;
+    private final ReplicationMetrics replication; // Also records the latencies of the rows of every table.
+    private volatile LatencyHistogram commitToWrite; // Null until a row with a source timestamp is written.
+    private final LongAdder events = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder(); // Bytes written to stdin.
+    private final LongAdder flushes = new LongAdder();
+    private volatile long lastSourceTimestamp; // Of the last row written; 0 until a row with a source timestamp is written.
+    private volatile long lagMillis;
+    private volatile double eventsPerSecond; // Over the last sampling interval.
+    private long sampledEvents; // Events at the last sample; only used by the sampler.
+    private long sampledNanos;
+
+    TableMetrics(String table, ReplicationMetrics replication) {
+        this.table = table;
+        this.replication = replication;
+        this.sampledNanos = System.nanoTime();
+    }
+
+    void eventReceived() {
+        events.increment();
+    }
+
+    // A row was written to a job of the table. Its values were rendered from the start time until the rendered time, and then written.
+    void rowWritten(int bytes, long sourceTimestamp, long startNanos, long renderedNanos) {
+        long now = System.nanoTime();
+        rowsWritten.increment();
+        bytesWritten.add(bytes);
+        replication.render.record(renderedNanos - startNanos);
+        replication.write.record(now - renderedNanos);
+        if (sourceTimestamp > 0) {
+            long lag = Math.max(0, System.currentTimeMillis() - sourceTimestamp);
+            lastSourceTimestamp = sourceTimestamp;
+            lagMillis = lag;
+            LatencyHistogram histogram = commitToWrite;
+            (histogram == null ? makeCommitToWrite() : histogram).record(TimeUnit.MILLISECONDS.toNanos(lag));
+            replication.commitToWrite.record(TimeUnit.MILLISECONDS.toNanos(lag));
+        }
+    }
+
+    private synchronized LatencyHistogram makeCommitToWrite() {
+        if (commitToWrite == null) {
+            commitToWrite = new LatencyHistogram(table,
+                    "Time from a change to " + table + " in the source database until its row is written.", SUB_BUCKET_BITS);
+        }
+        return commitToWrite;
+    }
+
+    void flushed(long startNanos) {
+        flushes.increment();
+        replication.flush.recordSince(startNanos);
+    }
+
+    // Work out the event rate since the last sample.
+    void sample(long nowNanos) {
+        long current = events.sum();
+        long elapsed = nowNanos - sampledNanos;
+        if (elapsed > 0) {
+            eventsPerSecond = (current - sampledEvents) * 1e9 / elapsed;
+        }
+        sampledEvents = current;
+        sampledNanos = nowNanos;
+    }
+
+    @Override
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public long getEvents() {
+        return events.sum();
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    @Override
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    @Override
+    public long getLastSourceTimestamp() {
+        return lastSourceTimestamp;
+    }
+
+    @Override
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    @Override
+    public double getCommitToWriteP50Millis() {
+        return getCommitToWritePercentileMillis(0.5);
+    }
+
+    @Override
+    public double getCommitToWriteP99Millis() {
+        return getCommitToWritePercentileMillis(0.99);
+    }
+
+    @Override
+    public double getCommitToWriteP999Millis() {
+        return getCommitToWritePercentileMillis(0.999);
+    }
+
+    private double getCommitToWritePercentileMillis(double fraction) {
+        LatencyHistogram histogram = commitToWrite;
+        return histogram == null ? 0 : histogram.getPercentileNanos(fraction) / 1e6;
+    }
+
+    @Override
+    public double getCommitToWriteMaxMillis() {
+        LatencyHistogram histogram = commitToWrite;
+        return histogram == null ? 0 : histogram.getMaxNanos() / 1e6;
+    }
+
+    // Null until a row with a source timestamp is written.
+    public LatencyHistogram getCommitToWrite() {
+        return commitToWrite;
+    }
+}
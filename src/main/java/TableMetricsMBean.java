@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: JMX view of the replication metrics of one source table.
+ *
+ * Contributors:
+ *     devonk
+ */
+public interface TableMetricsMBean {
+    String getTable();
+
+    long getEvents();
+
+    double getEventsPerSecond();
+
+    long getRowsWritten();
+
+    long getBytesWritten();
+
+    long getFlushes();
+
+    long getLastSourceTimestamp();
+
+    long getLagMillis();
+
+    double getCommitToWriteP50Millis();
+
+    double getCommitToWriteP99Millis();
+
+    double getCommitToWriteP999Millis();
+
+    double getCommitToWriteMaxMillis();
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Checks that a data class library with a pattern that does not compile is still read, with only the data class of that
+ * pattern skipped, whether it is parsed from the library file or restored from a snapshot.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataClassLibraryTest {
+    private static final Rule RULE = new Rule("FieldEncodingRule", "enc_aes256(${FIELDNAME})");
+    private static final Map<String, Rule> RULES = Collections.singletonMap("FieldEncodingRule", RULE);
+
+    private static String dataClass(String name, String nameMatcher, String details) {
+        return "  <dataClasses name=\"" + name + "\" nameMatcher=\"" + nameMatcher + "\">\n"
+                + "    <defaultRule href=\"iriLibrary.rules#FieldEncodingRule\"/>\n"
+                + "    <matchers details=\"" + details + "\"/>\n"
+                + "  </dataClasses>\n";
+    }
+
+    @Test
+    void invalidPatternSkipsOnlyItsDataClass() throws IOException {
+        Path library = Files.createTempFile("dataclass", ".dataclass");
+        try {
+            Files.write(library, ("<?xml version=\"1.0\" encoding=\"ASCII\"?>\n"
+                    + "<dataclass:DataClassLibrary xmlns:dataclass=\"http://dataclass/1.0\">\n"
+                    + dataClass("EMAIL", "EMAIL", "[\\w.]+@[\\w.]+")
+                    + dataClass("BROKEN", "BROKEN", "[0-9")
+                    + dataClass("BROKEN_NAME", "(NAME", "x+")
+                    + dataClass("PIN_US", "PIN_US", "\\d{3}-\\d{2}-\\d{4}")
+                    + "</dataclass:DataClassLibrary>\n").getBytes(StandardCharsets.US_ASCII));
+            DataClassLibrary dataClassLibrary = new DataClassLibrary(library.toString(), RULES);
+            assertTrue(dataClassLibrary.isParsed());
+            assertEquals(2, dataClassLibrary.getDefinitions().size());
+            assertEquals("EMAIL", dataClassLibrary.getDefinitions().get(0).name);
+            assertEquals("PIN_US", dataClassLibrary.getDefinitions().get(1).name);
+            assertEquals(2, dataClassLibrary.getDataClassIndex().size());
+            assertEquals(RULE.getRule(), dataClassLibrary.getDataClassIndex().match("123-45-6789", "SSN").getRule());
+            assertEquals(RULE.getRule(), dataClassLibrary.getDataClassIndex().match("", "EMAIL").getRule());
+            assertNull(dataClassLibrary.getDataClassIndex().match("12345", "ZIP"));
+        } finally {
+            Files.delete(library);
+        }
+    }
+
+    @Test
+    void invalidDefinitionsAreSkippedWhenRestored() {
+        DataClassLibrary dataClassLibrary = new DataClassLibrary();
+        dataClassLibrary.addDataClass(new DataClassLibrary.Definition("BROKEN", RULE, "", false, "(?<name"));
+        dataClassLibrary.addDataClass(new DataClassLibrary.Definition("MISSING", RULE, "", false, null));
+        dataClassLibrary.addDataClass(new DataClassLibrary.Definition("PIN_US", RULE, "PIN_US", false, "\\d{3}-\\d{2}-\\d{4}"));
+        dataClassLibrary.compileIndex();
+        assertEquals(1, dataClassLibrary.getDefinitions().size());
+        assertEquals(RULE.getRule(), dataClassLibrary.getDataClassIndex().match("123-45-6789", "SSN").getRule());
+    }
+}
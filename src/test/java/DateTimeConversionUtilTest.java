@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Checks the text of DateTimeConversionUtil against java.time for dates, times and timestamps drawn with a fixed seed, in
+ * every form it is written in, and that text which is not a ZonedTimestamp is passed through unchanged.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DateTimeConversionUtilTest {
+    private static final int VALUES = 200_000;
+
+    private static String chars(char[] out, int offset, int end) {
+        return new String(out, offset, end - offset);
+    }
+
+    private static String bytes(RowBuffer out) {
+        return out.toString();
+    }
+
+    private static String utc(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC).toString();
+    }
+
+    @Test
+    void datesMatchLocalDate() {
+        Random random = new Random(1);
+        char[] chars = new char[DateTimeConversionUtil.MAX_DATE_LENGTH + 1];
+        RowBuffer buffer = new RowBuffer();
+        for (int index = 0; index < VALUES; index++) {
+            long epochDay = index % 2 == 0 ? random.nextInt(200_000) - 100_000 : random.nextInt();
+            String expected = LocalDate.ofEpochDay(epochDay).toString();
+            assertEquals(expected, DateTimeConversionUtil.date(epochDay));
+            assertEquals(expected, chars(chars, 1, DateTimeConversionUtil.formatDate(epochDay, chars, 1)));
+            buffer.reset();
+            DateTimeConversionUtil.writeDate(epochDay, buffer);
+            assertEquals(expected, bytes(buffer));
+        }
+        for (int epochDay : new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE, -719528, -719529, 0, -1}) {
+            assertEquals(LocalDate.ofEpochDay(epochDay).toString(), DateTimeConversionUtil.integerToDate(epochDay));
+        }
+    }
+
+    @Test
+    void timesMatchLocalTime() {
+        Random random = new Random(2);
+        char[] chars = new char[DateTimeConversionUtil.MAX_TIME_LENGTH];
+        RowBuffer buffer = new RowBuffer();
+        for (int index = 0; index < VALUES; index++) {
+            long nanoOfDay = (long) (random.nextDouble() * TimeUnit.DAYS.toNanos(1));
+            if (index % 4 == 0) { // Whole milliseconds, seconds and minutes are written shorter.
+                nanoOfDay = nanoOfDay / 1_000_000 * 1_000_000;
+            } else if (index % 4 == 1) {
+                nanoOfDay = nanoOfDay / 1_000_000_000 * 1_000_000_000;
+            } else if (index % 8 == 2) {
+                nanoOfDay = nanoOfDay / 60_000_000_000L * 60_000_000_000L;
+            }
+            String expected = LocalTime.ofNanoOfDay(nanoOfDay).toString();
+            assertEquals(expected, DateTimeConversionUtil.time(nanoOfDay, TimeUnit.NANOSECONDS));
+            assertEquals(expected, chars(chars, 0, DateTimeConversionUtil.formatTime(nanoOfDay, TimeUnit.NANOSECONDS, chars, 0)));
+            long microOfDay = nanoOfDay / 1000;
+            buffer.reset();
+            DateTimeConversionUtil.writeTime(microOfDay, TimeUnit.MICROSECONDS, buffer);
+            assertEquals(LocalTime.ofNanoOfDay(microOfDay * 1000).toString(), bytes(buffer));
+            assertEquals(LocalTime.ofNanoOfDay(microOfDay * 1000).toString(), DateTimeConversionUtil.numberToTime(microOfDay));
+        }
+        assertThrows(DateTimeException.class, () -> DateTimeConversionUtil.numberToTime(TimeUnit.DAYS.toMicros(1)));
+        assertThrows(DateTimeException.class, () -> DateTimeConversionUtil.numberToTime(-1));
+    }
+
+    @Test
+    void timestampsMatchLocalDateTime() {
+        Random random = new Random(3);
+        char[] chars = new char[DateTimeConversionUtil.MAX_DATE_TIME_LENGTH];
+        RowBuffer buffer = new RowBuffer();
+        for (int index = 0; index < VALUES; index++) {
+            long millis = index % 5 == 0 ? random.nextLong() / 1000 : (long) ((random.nextDouble() - 0.3) * 4e12); // Before 1970 too.
+            String expected = utc(Instant.ofEpochMilli(millis));
+            assertEquals(expected, DateTimeConversionUtil.numberToDateTime(millis));
+            buffer.reset();
+            DateTimeConversionUtil.writeTimestamp(millis, TimeUnit.MILLISECONDS, buffer);
+            assertEquals(expected, bytes(buffer));
+
+            long micros = random.nextLong() / (index % 2 == 0 ? 1 : 100_000);
+            expected = utc(Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000));
+            assertEquals(expected, DateTimeConversionUtil.timestamp(micros, TimeUnit.MICROSECONDS));
+            assertEquals(expected, chars(chars, 0, DateTimeConversionUtil.formatTimestamp(micros, TimeUnit.MICROSECONDS, chars, 0)));
+
+            long nanos = random.nextLong();
+            expected = utc(Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)));
+            assertEquals(expected, DateTimeConversionUtil.timestamp(nanos, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @Test
+    void zonedTimestampsAreWrittenInUtc() {
+        Random random = new Random(4);
+        char[] chars = new char[DateTimeConversionUtil.MAX_DATE_TIME_LENGTH];
+        RowBuffer buffer = new RowBuffer();
+        for (int index = 0; index < VALUES; index++) {
+            ZoneOffset offset = index % 3 == 0 ? ZoneOffset.UTC : ZoneOffset.ofTotalSeconds((random.nextInt(36 * 4) - 18 * 4) * 900);
+            int nano = index % 2 == 0 ? 0 : random.nextInt(1_000_000_000) / (index % 3 == 0 ? 1 : 1000) * (index % 3 == 0 ? 1 : 1000);
+            OffsetDateTime dateTime = OffsetDateTime.ofInstant(Instant.ofEpochSecond(random.nextInt(2_000_000_000) * (index % 7 == 0 ? -3L : 1L), nano), offset);
+            String value = dateTime.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME); // As Debezium writes a ZonedTimestamp.
+            String expected = dateTime.atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime().toString();
+            assertEquals(expected, DateTimeConversionUtil.zonedTimestamp(value), value);
+            assertEquals(expected, chars(chars, 0, DateTimeConversionUtil.formatZonedTimestamp(value, chars, 0)), value);
+            buffer.reset();
+            DateTimeConversionUtil.writeZonedTimestamp(value, buffer);
+            assertEquals(expected, bytes(buffer), value);
+        }
+        for (String value : new String[]{"2022-04-15T10:20Z", "2022-04-15T10:20:30.1+02:00", "2022-04-15T10:20:30.123456789-05:30",
+                "+12022-04-15T10:20:30Z", "2022-04-15T23:20:30+01:00:30", "2024-02-29T00:00:00-18:00"}) {
+            assertEquals(OffsetDateTime.parse(value).atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime().toString(), DateTimeConversionUtil.zonedTimestamp(value), value);
+        }
+    }
+
+    @Test
+    void malformedZonedTimestampsPassThrough() {
+        char[] chars = new char[DateTimeConversionUtil.MAX_DATE_TIME_LENGTH];
+        RowBuffer buffer = new RowBuffer();
+        for (String value : new String[]{"", "abc", "2022-04-15", "2022-04-15T10:20", "2022-04-15 10:20:30Z", "2022-04-15T10-20:30Z",
+                "2022-04-15T10:2x:30Z", "2022/04/15T10:20Z", "2022-02-30T10:20Z", "2023-02-29T10:20Z", "2022-13-15T10:20Z", "2022-00-15T10:20Z",
+                "2022-04-00T10:20Z", "2022-04-15T24:00Z", "2022-04-15T10:60Z", "2022-04-15T10:20:60Z", "2022-04-15T10:20:30.Z",
+                "2022-04-15T10:20:30.1234567890Z", "2022-04-15T10:20Zx", "2022-04-15T10:20+19:00", "2022-04-15T10:20+02", "2022-04-15T10:20+02:60",
+                "22-04-15T10:20Z", "2022-04-15T10:20:30z"}) {
+            assertEquals(value, DateTimeConversionUtil.zonedTimestamp(value), value);
+            assertEquals(-1, DateTimeConversionUtil.formatZonedTimestamp(value, chars, 0), value);
+            buffer.reset();
+            DateTimeConversionUtil.writeZonedTimestamp(value, buffer);
+            assertEquals(value, bytes(buffer), value);
+        }
+    }
+}
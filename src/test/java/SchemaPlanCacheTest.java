@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+ *
+ * Description: Checks that the schema fingerprint of a JSON change event covers the whole schema, including the columns after one
+ * named payload, and none of the payload.
+ *
+ * Contributors:
+ *     devonk
+ */
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaPlanCacheTest {
+    private static final String TABLE = "inventory.orders";
+
+    // An insert into a table with the columns id, payload and created, where created has the given type and logical type name.
+    private static String changeEvent(String createdType, String createdName, long id) {
+        String fields = "[{\"type\":\"int64\",\"optional\":false,\"field\":\"id\"},"
+                + "{\"type\":\"string\",\"optional\":true,\"field\":\"payload\"},"
+                + "{\"type\":\"" + createdType + "\",\"optional\":true,"
+                + (createdName == null ? "" : "\"name\":\"" + createdName + "\",") + "\"field\":\"created\"}]";
+        return "{\"schema\":{\"type\":\"struct\",\"fields\":[{\"type\":\"struct\",\"fields\":" + fields
+                + ",\"optional\":true,\"field\":\"after\"}],\"optional\":false,\"name\":\"server.inventory.orders.Envelope\"},"
+                + "\"payload\":{\"after\":{\"id\":" + id + ",\"payload\":\"{\\\"payload\\\":1}\",\"created\":19000},\"op\":\"c\"}}";
+    }
+
+    @Test
+    void columnNamedPayloadDoesNotEndTheSchema() {
+        String int32 = changeEvent("int32", null, 1);
+        String date = changeEvent("int32", "io.debezium.time.Date", 1);
+        assertTrue(SchemaPlanCache.fingerprint(int32) != SchemaPlanCache.fingerprint(date), "change after the payload column missed");
+        assertEquals(SchemaPlanCache.fingerprint(date), SchemaPlanCache.fingerprint(changeEvent("int32", "io.debezium.time.Date", 2)));
+    }
+
+    @Test
+    void changedSchemaRecompilesThePlan() {
+        SchemaPlanCache cache = new SchemaPlanCache();
+        String int32 = changeEvent("int32", null, 1);
+        String date = changeEvent("int32", "io.debezium.time.Date", 1);
+        SchemaPlan first = cache.get(TABLE, SchemaPlanCache.fingerprint(int32), JsonParser.parseString(int32).getAsJsonObject(), null);
+        SchemaPlan second = cache.get(TABLE, SchemaPlanCache.fingerprint(date), JsonParser.parseString(date).getAsJsonObject(), null);
+        assertNotSame(first, second);
+        assertEquals(Arrays.asList("id", "payload", "created"), second.getColumns());
+        assertEquals("19", first.render(2, 19));
+        assertEquals("1970-01-20", second.render(2, 19));
+    }
+}
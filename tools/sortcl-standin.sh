@@ -0,0 +1,26 @@
+#!/bin/sh
+#
+# Copyright (c) 2022 Innovative Routines International (IRI), Inc.
+#
+# Description: Stand-in for sortcl, for measuring Ripcurrent without CoSort. Set the sortclExecutable property to this script. It
+# checks that it was given a readable /SPEC= file, optionally waits SORTCL_STANDIN_STARTUP_MS milliseconds to imitate the start-up of
+# sortcl, and then appends stdin to SORTCL_STANDIN_OUTPUT (default /dev/null).
+#
+# Contributors:
+#     devonk
+#
+
+spec=
+for arg in "$@"; do
+    case "$arg" in
+        /SPEC=*) spec="${arg#/SPEC=}" ;;
+    esac
+done
+if [ -z "$spec" ] || [ ! -r "$spec" ]; then
+    echo "sortcl-standin: no readable /SPEC= file given" >&2
+    exit 1
+fi
+if [ -n "$SORTCL_STANDIN_STARTUP_MS" ]; then
+    sleep "$(awk "BEGIN { print $SORTCL_STANDIN_STARTUP_MS / 1000 }")"
+fi
+exec cat >> "${SORTCL_STANDIN_OUTPUT:-/dev/null}"